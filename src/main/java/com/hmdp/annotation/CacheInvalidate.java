@@ -0,0 +1,31 @@
+package com.hmdp.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * CacheInvalidate
+ *
+ * @author sundae
+ * @date 2024/11/27
+ * @description 方法正常返回（事务提交）后删除指定的缓存，并通知所有节点删除本地缓存。方法抛出异常时不删除
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheInvalidate {
+
+    /**
+     * 缓存key前缀，与 {@link Cached#keyPrefix()} 相同
+     */
+    String keyPrefix();
+
+    /**
+     * 拼接在前缀后面的id，SpEL表达式，例如 "#shop.id"，可以用 @bean名 引用Spring中的bean。
+     * 在方法返回之后求值；为空时使用所有参数以冒号拼接；结果为null时不删除
+     */
+    String key() default "";
+}
@@ -0,0 +1,25 @@
+package com.hmdp.annotation;
+
+/**
+ * CacheStrategy
+ *
+ * @author sundae
+ * @date 2024/11/27
+ * @description {@link Cached} 使用的缓存策略，分别对应 CacheClient 中的几种查询方法
+ */
+public enum CacheStrategy {
+    /**
+     * 缓存空值解决缓存穿透，未命中时同一个key只有一个线程查库
+     */
+    PASS_THROUGH,
+
+    /**
+     * 逻辑过期解决缓存击穿，过期后返回旧数据并异步重建。缓存需要提前预热，未命中直接返回null
+     */
+    LOGICAL_EXPIRE,
+
+    /**
+     * 互斥锁解决缓存击穿，未命中时抢到锁的线程查库，其余线程等待后重新查缓存
+     */
+    MUTEX
+}
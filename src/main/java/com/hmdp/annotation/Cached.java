@@ -0,0 +1,54 @@
+package com.hmdp.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cached
+ *
+ * @author sundae
+ * @date 2024/11/27
+ * @description 声明式缓存：方法的返回值按指定策略缓存到Redis，方法体就是数据库查询方法。
+ * <p>
+ * 返回值可以是实体类，也可以是 List 等集合（按元素类型的数组缓存），不支持基本类型。
+ * 和 @Transactional 一样基于代理实现，同一个类内部调用不会生效。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Cached {
+
+    /**
+     * 缓存key前缀，同时也是统计信息中的缓存名称
+     */
+    String keyPrefix();
+
+    /**
+     * 拼接在前缀后面的id，SpEL表达式，例如 "#id"、"#p0"。为空时使用所有参数以冒号拼接
+     */
+    String key() default "";
+
+    /**
+     * 缓存策略
+     */
+    CacheStrategy strategy() default CacheStrategy.PASS_THROUGH;
+
+    /**
+     * 过期时间（逻辑过期策略下为逻辑过期时间）
+     */
+    long ttl();
+
+    /**
+     * 过期时间单位
+     */
+    TimeUnit unit() default TimeUnit.MINUTES;
+
+    /**
+     * 互斥锁key前缀，逻辑过期和互斥锁策略使用。为空时为 "lock:" + keyPrefix
+     */
+    String lockKeyPrefix() default "";
+}
@@ -0,0 +1,31 @@
+package com.hmdp.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * RateLimit
+ *
+ * @author sundae
+ * @date 2024/12/03
+ * @description 接口限流：按 接口 + 资源 + 当前用户（未登录时为IP）计数，超过限制时直接返回失败，不执行方法。
+ * 规则在配置文件的 hmdp.rate-limit.endpoints 中按接口名配置，只能用在返回 Result 的方法上
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RateLimit {
+
+    /**
+     * 接口名，对应配置文件中 hmdp.rate-limit.endpoints 下的key
+     */
+    String value();
+
+    /**
+     * 资源，SpEL表达式，例如 "#voucherId"。可以在配置中为某个资源单独设置规则；为空时只按用户计数
+     */
+    String resource() default "";
+}
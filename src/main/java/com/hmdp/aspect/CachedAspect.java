@@ -0,0 +1,211 @@
+package com.hmdp.aspect;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.annotation.CacheInvalidate;
+import com.hmdp.annotation.Cached;
+import com.hmdp.utils.CacheClient;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.expression.BeanFactoryResolver;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.Ordered;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.Order;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * CachedAspect
+ *
+ * @author sundae
+ * @date 2024/11/27
+ * @description {@link Cached} 和 {@link CacheInvalidate} 的切面，把方法调用转交给 CacheClient 对应的查询方法。
+ * <p>
+ * 优先级高于事务切面，保证删除缓存发生在事务提交之后。
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CachedAspect {
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private BeanFactory beanFactory;
+
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    /**
+     * SpEL表达式解析结果
+     */
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    /**
+     * 方法 -> 缓存的类型（集合返回值对应元素类型的数组）
+     */
+    private final Map<Method, Class<?>> cacheTypes = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存名称（key前缀） -> 统计信息
+     */
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @Around("@annotation(cached)")
+    public Object cached(ProceedingJoinPoint joinPoint, Cached cached) {
+        Method method = resolveMethod(joinPoint);
+        Object id = evaluateKey(cached.key(), method, joinPoint);
+        @SuppressWarnings("unchecked")
+        Class<Object> cacheType = (Class<Object>) cacheTypes.computeIfAbsent(method, CachedAspect::resolveCacheType);
+        Counter counter = counters.computeIfAbsent(cached.keyPrefix(), k -> new Counter());
+        counter.requests.increment();
+        // 缓存未命中（或者逻辑过期后重建）时才会执行原方法
+        AtomicBoolean loaded = new AtomicBoolean();
+        Function<Object, Object> dbFallback = ignored -> {
+            loaded.set(true);
+            counter.misses.increment();
+            return toCacheValue(proceed(joinPoint), cacheType);
+        };
+        String lockKeyPrefix = StrUtil.isEmpty(cached.lockKeyPrefix()) ? "lock:" + cached.keyPrefix() : cached.lockKeyPrefix();
+        Object value;
+        switch (cached.strategy()) {
+            case LOGICAL_EXPIRE:
+                value = cacheClient.queryWithLogicalExpire(cached.keyPrefix(), id, cacheType, lockKeyPrefix,
+                        dbFallback, cached.ttl(), cached.unit());
+                break;
+            case MUTEX:
+                value = cacheClient.queryWithMutex(cached.keyPrefix(), id, cacheType, lockKeyPrefix,
+                        dbFallback, cached.ttl(), cached.unit());
+                break;
+            default:
+                value = cacheClient.queryWithPassThrough(cached.keyPrefix(), id, cacheType,
+                        dbFallback, cached.ttl(), cached.unit());
+        }
+        // 没有查询数据库就拿到了数据才算命中（逻辑过期的key不存在时返回null，不算命中）
+        if (value != null && !loaded.get()) {
+            counter.hits.increment();
+        }
+        return fromCacheValue(value, method);
+    }
+
+    @Around("@annotation(invalidate)")
+    public Object invalidate(ProceedingJoinPoint joinPoint, CacheInvalidate invalidate) throws Throwable {
+        Object result = joinPoint.proceed();
+        Object id = evaluateKey(invalidate.key(), resolveMethod(joinPoint), joinPoint);
+        if (id != null) {
+            cacheClient.delete(invalidate.keyPrefix() + id);
+            counters.computeIfAbsent(invalidate.keyPrefix(), k -> new Counter()).invalidations.increment();
+        }
+        return result;
+    }
+
+    /**
+     * 各个缓存的命中统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        counters.forEach((name, counter) -> stats.put(name, counter.stats()));
+        return stats;
+    }
+
+    private static Method resolveMethod(ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        // 通过接口调用时拿到的是接口方法，换成实现类的方法才能读到参数名
+        return joinPoint.getTarget() == null ? method : AopUtils.getMostSpecificMethod(method, joinPoint.getTarget().getClass());
+    }
+
+    private Object evaluateKey(String key, Method method, ProceedingJoinPoint joinPoint) {
+        Object[] args = joinPoint.getArgs();
+        if (StrUtil.isEmpty(key)) {
+            return StrUtil.join(":", args);
+        }
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null, method, args, parameterNameDiscoverer);
+        // 支持 @bean名 引用Spring中的bean，例如参数中只有id时查出缓存key需要的字段
+        context.setBeanResolver(new BeanFactoryResolver(beanFactory));
+        return expressions.computeIfAbsent(key, parser::parseExpression).getValue(context);
+    }
+
+    private static Class<?> resolveCacheType(Method method) {
+        Class<?> returnType = method.getReturnType();
+        if (returnType.isPrimitive()) {
+            throw new IllegalStateException("@Cached 不支持基本类型的返回值：" + method);
+        }
+        if (Collection.class.isAssignableFrom(returnType)) {
+            if (!returnType.isAssignableFrom(ArrayList.class)) {
+                throw new IllegalStateException("@Cached 的集合返回值只支持 List：" + method);
+            }
+            Class<?> elementType = ResolvableType.forMethodReturnType(method).asCollection().resolveGeneric(0);
+            if (elementType == null) {
+                throw new IllegalStateException("@Cached 无法确定集合的元素类型：" + method);
+            }
+            return Array.newInstance(elementType, 0).getClass();
+        }
+        return returnType;
+    }
+
+    private static Object toCacheValue(Object value, Class<?> cacheType) {
+        if (value instanceof Collection && cacheType.isArray()) {
+            Collection<?> collection = (Collection<?>) value;
+            return collection.toArray((Object[]) Array.newInstance(cacheType.getComponentType(), collection.size()));
+        }
+        return value;
+    }
+
+    private static Object fromCacheValue(Object value, Method method) {
+        if (value instanceof Object[] && Collection.class.isAssignableFrom(method.getReturnType())) {
+            // 缓存的数组可能同时被本地缓存持有，每次返回新的集合
+            return new ArrayList<>(Arrays.asList((Object[]) value));
+        }
+        return value;
+    }
+
+    private static Object proceed(ProceedingJoinPoint joinPoint) {
+        try {
+            return joinPoint.proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    private static class Counter {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder invalidations = new LongAdder();
+
+        private Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            long total = requests.sum();
+            long hit = hits.sum();
+            stats.put("requests", total);
+            stats.put("hits", hit);
+            stats.put("misses", misses.sum());
+            stats.put("hitRate", total == 0 ? 0 : (double) hit / total);
+            stats.put("invalidations", invalidations.sum());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.hmdp.aspect;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.annotation.RateLimit;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.RateLimiter;
+import com.hmdp.utils.UserHolder;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.Ordered;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.Order;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RateLimitAspect
+ *
+ * @author sundae
+ * @date 2024/12/03
+ * @description {@link RateLimit} 的切面，被限流的请求直接返回失败
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RateLimitAspect {
+    @Resource
+    private RateLimiter rateLimiter;
+
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    /**
+     * SpEL表达式解析结果
+     */
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    @Around("@annotation(rateLimit)")
+    public Object rateLimit(ProceedingJoinPoint joinPoint, RateLimit rateLimit) throws Throwable {
+        Object resource = null;
+        if (StrUtil.isNotEmpty(rateLimit.resource())) {
+            MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null,
+                    ((MethodSignature) joinPoint.getSignature()).getMethod(), joinPoint.getArgs(), parameterNameDiscoverer);
+            resource = expressions.computeIfAbsent(rateLimit.resource(), parser::parseExpression).getValue(context);
+        }
+        if (!rateLimiter.tryAcquire(rateLimit.value(), resource, currentSubject())) {
+            return Result.fail("请求太频繁，请稍后再试！");
+        }
+        return joinPoint.proceed();
+    }
+
+    /**
+     * 当前用户id，未登录时使用客户端IP
+     */
+    private String currentSubject() {
+        UserDTO user = UserHolder.getUser();
+        if (user != null) {
+            return user.getId().toString();
+        }
+        return rateLimiter.clientIp();
+    }
+}
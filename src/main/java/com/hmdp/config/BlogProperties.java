@@ -0,0 +1,30 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * BlogProperties
+ *
+ * @author sundae
+ * @date 2024/12/10
+ * @description 探店博文相关配置，对应配置文件中的 hmdp.blog
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.blog")
+public class BlogProperties {
+
+    /**
+     * 点赞数写回数据库的间隔，数据库中的点赞数最多落后这么久
+     */
+    private Duration likeFlushInterval = Duration.ofSeconds(5);
+
+    /**
+     * 一条 UPDATE 语句最多更新的博客数
+     */
+    private int likeFlushBatchSize = 500;
+}
@@ -0,0 +1,180 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * CacheProperties
+ *
+ * @author sundae
+ * @date 2024/11/20
+ * @description 缓存相关配置，对应配置文件中的 hmdp.cache
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache")
+public class CacheProperties {
+
+    /**
+     * 缓存序列化方式：json（默认）或者 binary（紧凑二进制，仅支持 Shop、Voucher、Blog、UserDTO，其他类型仍用json）
+     */
+    private String codec = "json";
+
+    /**
+     * 本地缓存（一级缓存）配置
+     */
+    private Local local = new Local();
+
+    /**
+     * 布隆过滤器配置
+     */
+    private Bloom bloom = new Bloom();
+
+    /**
+     * 缓存重建线程池配置
+     */
+    private Rebuild rebuild = new Rebuild();
+
+    /**
+     * 提前刷新（XFetch）配置
+     */
+    private EarlyRefresh earlyRefresh = new EarlyRefresh();
+
+    /**
+     * 大对象压缩配置
+     */
+    private Compression compression = new Compression();
+
+    /**
+     * 启动时的缓存预热配置
+     */
+    private WarmUp warmUp = new WarmUp();
+
+    @Data
+    public static class Local {
+        /**
+         * 是否开启本地缓存，默认关闭
+         */
+        private boolean enabled = false;
+
+        /**
+         * 本地缓存最多保存的key数量，超过后按LRU淘汰
+         */
+        private int maximumSize = 10000;
+
+        /**
+         * 本地缓存的存活时间，即使没有收到失效通知，过了这个时间也会回源Redis
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Bloom {
+        /**
+         * 是否开启布隆过滤器，默认关闭
+         */
+        private boolean enabled = false;
+
+        /**
+         * 每个过滤器预计的元素个数
+         */
+        private long expectedInsertions = 1000000L;
+
+        /**
+         * 期望误判率
+         */
+        private double falsePositiveRate = 0.01;
+
+        /**
+         * 每个过滤器最多占用的内存，按误判率算出来的位数组超过这个大小时会被截断（误判率随之升高）
+         */
+        private DataSize maxMemory = DataSize.ofMegabytes(4);
+
+        /**
+         * 从数据库全量重建的间隔，用来兜底丢失的新增通知，小于等于0表示只在启动时构建
+         */
+        private Duration rebuildInterval = Duration.ofHours(1);
+
+        /**
+         * 全量构建时每次从数据库读取的id个数
+         */
+        private int loadBatchSize = 1000;
+    }
+
+    @Data
+    public static class Rebuild {
+        /**
+         * 重建线程数
+         */
+        private int threads = 10;
+
+        /**
+         * 等待队列长度，队列满了之后新的重建请求会被放弃（返回旧数据）
+         */
+        private int queueCapacity = 1000;
+    }
+
+    @Data
+    public static class EarlyRefresh {
+        /**
+         * 提前刷新的力度，大于1时更早刷新，小于1时更接近过期才刷新
+         */
+        private double beta = 1.0;
+    }
+
+    @Data
+    public static class Compression {
+        /**
+         * 是否压缩，默认关闭。关闭后仍然可以读取已经压缩过的数据
+         */
+        private boolean enabled = false;
+
+        /**
+         * 序列化后超过这个大小才压缩，小对象压缩收益低，还会浪费CPU
+         */
+        private DataSize threshold = DataSize.ofBytes(1024);
+    }
+
+    @Data
+    public static class WarmUp {
+        /**
+         * 是否在启动时预热商铺缓存，默认关闭
+         */
+        private boolean enabled = false;
+
+        /**
+         * 每次从数据库读取的商铺个数，也是每次管道写入Redis的个数
+         */
+        private int pageSize = 500;
+
+        /**
+         * 同时写入Redis的线程数
+         */
+        private int concurrency = 4;
+
+        /**
+         * 每秒最多写入的key个数，避免预热把数据库和Redis打满，小于等于0表示不限制
+         */
+        private int rate = 0;
+
+        /**
+         * 逻辑过期时间的最大随机偏移，预热的key分散在 [TTL, TTL + ttlJitter] 内过期，不会同时过期
+         */
+        private Duration ttlJitter = Duration.ofMinutes(10);
+
+        /**
+         * 一次预热之后，这段时间内其他节点启动时不再预热（Redis中的标记，手动触发不受影响）
+         */
+        private Duration minInterval = Duration.ofHours(1);
+
+        /**
+         * 是否允许通过 POST /monitor/cache/warm-up 手动触发预热，默认关闭。
+         * 预热会扫描整张商铺表并重写Redis，而 /monitor 只要求登录，只在需要时（例如Redis故障切换之后）临时开启
+         */
+        private boolean manualEnabled = false;
+    }
+}
@@ -0,0 +1,62 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * IdProperties
+ *
+ * @author sundae
+ * @date 2024/12/04
+ * @description 全局唯一ID生成配置，对应配置文件中的 hmdp.id
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.id")
+public class IdProperties {
+
+    /**
+     * 生成方式：redis（每个ID执行一次INCR，默认）、segment（号段，一次INCRBY申请一段序列号在内存中分配）
+     * 或者 snowflake（本地生成，只在启动和续期 worker id 时访问Redis）
+     */
+    private String mode = "redis";
+
+    /**
+     * 号段配置
+     */
+    private Segment segment = new Segment();
+
+    /**
+     * 本地生成配置
+     */
+    private Snowflake snowflake = new Snowflake();
+
+    @Data
+    public static class Segment {
+        /**
+         * 每次申请的序列号个数
+         */
+        private int size = 1000;
+
+        /**
+         * 当前号段剩余的比例低于这个值时，在后台提前申请下一个号段
+         */
+        private double prefetchRatio = 0.2;
+    }
+
+    @Data
+    public static class Snowflake {
+        /**
+         * worker id 租约的时间，每过三分之一续期一次。租约过期后（例如长时间连不上Redis）停止生成ID
+         */
+        private Duration leaseTtl = Duration.ofSeconds(30);
+
+        /**
+         * 允许的时钟回拨，回拨不超过这个时间时继续使用上一次的时间戳，超过时生成ID失败
+         */
+        private Duration maxBackward = Duration.ofSeconds(5);
+    }
+}
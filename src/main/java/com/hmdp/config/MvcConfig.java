@@ -2,8 +2,8 @@ package com.hmdp.config;
 
 import com.hmdp.interceptor.LoginInterceptor;
 import com.hmdp.interceptor.TokenRefreshInterceptor;
+import com.hmdp.utils.SessionCache;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -20,7 +20,7 @@ import javax.annotation.Resource;
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
     @Resource
-    StringRedisTemplate stringRedisTemplate;
+    SessionCache sessionCache;
 
     // 通过order属性控制拦截器的优先级（越小优先级越高），也可以通过注册的先后顺序来控制
     @Override
@@ -35,7 +35,9 @@ public class MvcConfig implements WebMvcConfigurer {
                 "/user/code",
                 "/user/login"
         ).order(1);
-        registry.addInterceptor(new TokenRefreshInterceptor(stringRedisTemplate)).order(0);
+        // 补充秒杀券库存会清除所有节点的售罄标记，不能匿名访问（/voucher/** 的其他接口仍然放行）
+        registry.addInterceptor(new LoginInterceptor()).addPathPatterns("/voucher/seckill/*/stock").order(1);
+        registry.addInterceptor(new TokenRefreshInterceptor(sessionCache)).order(0);
     }
 }
 
@@ -0,0 +1,111 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RateLimitProperties
+ *
+ * @author sundae
+ * @date 2024/12/03
+ * @description 接口限流配置，对应配置文件中的 hmdp.rate-limit
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.rate-limit")
+public class RateLimitProperties {
+
+    /**
+     * 是否开启限流，默认开启
+     */
+    private boolean enabled = true;
+
+    /**
+     * 本地令牌桶最多保存的个数（每个 接口+资源+用户 一个），满了之后按LRU淘汰
+     */
+    private int localMaximumSize = 100000;
+
+    /**
+     * 接口名（@RateLimit 的 value） -> 限流规则，没有配置的接口不限流
+     */
+    private Map<String, Rule> endpoints = new HashMap<>();
+
+    /**
+     * 多级滑动窗口（Redis，所有节点共用），名称 -> 各级窗口，例如发送验证码每个手机号每分钟1次、每天10次
+     */
+    private Map<String, List<Window>> windows = new HashMap<>();
+
+    /**
+     * 被滑动窗口拒绝的请求方在本地记录的最长时间，记录期间直接拒绝，不访问Redis
+     */
+    private Duration localBlockMax = Duration.ofMinutes(1);
+
+    /**
+     * 可信的反向代理（IP或者IPv4网段，例如 10.0.0.0/8）。只有直接连接的地址是可信代理时才使用
+     * X-Forwarded-For / X-Real-IP 中的客户端IP，否则这些请求头可以被客户端随意伪造
+     */
+    private List<String> trustedProxies = new ArrayList<>();
+
+    public enum Mode {
+        /**
+         * 本地令牌桶，每个节点单独计数，不访问Redis
+         */
+        LOCAL,
+        /**
+         * Redis滑动窗口，所有节点共用一个计数
+         */
+        GLOBAL
+    }
+
+    @Data
+    public static class Window {
+        /**
+         * 窗口内允许的请求数
+         */
+        private int permits;
+
+        /**
+         * 窗口长度
+         */
+        private Duration period;
+    }
+
+    @Data
+    public static class Rule {
+        /**
+         * 限流方式
+         */
+        private Mode mode = Mode.LOCAL;
+
+        /**
+         * 每个周期内允许的请求数
+         */
+        private int permits = 10;
+
+        /**
+         * 周期，本地模式下按 permits / period 的速率生成令牌，全局模式下是滑动窗口的长度
+         */
+        private Duration period = Duration.ofSeconds(1);
+
+        /**
+         * 本地令牌桶的容量（允许的突发请求数），小于等于0时等于 permits
+         */
+        private int burst = 0;
+
+        /**
+         * 资源（例如优惠券id） -> 单独的限流规则，覆盖接口的规则（需要写出完整的规则）
+         */
+        private Map<String, Rule> resources = new HashMap<>();
+
+        public int capacity() {
+            return burst > 0 ? burst : permits;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * SeckillProperties
+ *
+ * @author sundae
+ * @date 2024/11/29
+ * @description 秒杀相关配置，对应配置文件中的 hmdp.seckill
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.seckill")
+public class SeckillProperties {
+
+    /**
+     * 异步下单（订单消息队列消费）配置
+     */
+    private Order order = new Order();
+
+    /**
+     * 异步排队（请求进入本地队列后立即返回凭证）配置
+     */
+    private Admission admission = new Admission();
+
+    /**
+     * 本地售罄标记的存活时间，过期后放一个请求去Redis确认库存（兜底丢失的补充库存通知）
+     */
+    private Duration soldOutTtl = Duration.ofSeconds(30);
+
+    /**
+     * 新建秒杀券时库存拆分的分片数，大于1时开启分片，把一个热门秒杀券的压力分散到多个key（集群中的多个节点）上。
+     * 只对新建的秒杀券生效，已有秒杀券的分片数保存在Redis中不会改变
+     */
+    private int stockShards = 1;
+
+    /**
+     * 秒杀券信息（开始、结束时间）在本地缓存的时间
+     */
+    private Duration voucherCacheTtl = Duration.ofMinutes(1);
+
+    @Data
+    public static class Admission {
+        /**
+         * 是否开启异步排队，默认关闭（请求线程中执行Lua脚本并返回订单id）
+         */
+        private boolean enabled = false;
+
+        /**
+         * 排队队列的容量，满了之后直接拒绝
+         */
+        private int capacity = 10000;
+
+        /**
+         * 处理排队请求（执行Lua脚本）的线程数
+         */
+        private int workers = 4;
+
+        /**
+         * 凭证状态在Redis中保存的时间
+         */
+        private Duration ticketTtl = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class Order {
+        /**
+         * 订单队列的分区数，按优惠券id取模。每个节点为每个分区启动一个消费线程，多个节点共用一个消费者组
+         */
+        private int partitions = 4;
+
+        /**
+         * 每批最多写入数据库的订单数
+         */
+        private int batchSize = 200;
+
+        /**
+         * 凑一批订单最多等待的时间，到时间后不足一批也会写入
+         */
+        private Duration batchWait = Duration.ofMillis(50);
+
+        /**
+         * 队列为空时每次阻塞等待的时间
+         */
+        private Duration blockTimeout = Duration.ofSeconds(2);
+
+        /**
+         * 其他消费者（例如已经宕机的节点）的消息超过这个时间还没有确认，就转移给自己处理
+         */
+        private Duration claimIdle = Duration.ofMinutes(1);
+
+        /**
+         * 一条消息最多失败的次数，超过后转入死信队列并确认，避免一直重试。
+         * 只统计确定性的失败，数据库或者Redis暂时不可用（连接失败、超时等）时一直重试，不会放弃
+         */
+        private int maxDeliveries = 5;
+
+        /**
+         * pending-list 中的订单处理失败后，等待这么长时间再重试，之后每次失败等待时间翻倍
+         */
+        private Duration retryBackoff = Duration.ofSeconds(1);
+
+        /**
+         * pending-list 重试的最长等待时间
+         */
+        private Duration maxRetryBackoff = Duration.ofMinutes(1);
+
+        /**
+         * 检查多余分区队列的间隔。分区数改小（或者滚动发布期间各节点的分区数不一致）时，
+         * 编号大于等于当前分区数的队列没有消费者，定时检查并把其中剩下的订单处理完
+         */
+        private Duration orphanScanInterval = Duration.ofMinutes(1);
+    }
+}
@@ -0,0 +1,81 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SessionProperties
+ *
+ * @author sundae
+ * @date 2024/12/06
+ * @description 登录状态相关配置，对应配置文件中的 hmdp.session
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.session")
+public class SessionProperties {
+
+    /**
+     * 登录状态的保存方式：redis（随机token + Redis中的用户hash，默认）
+     * 或者 signed（令牌本身带有用户信息并签名，校验时不访问Redis）
+     */
+    private String mode = "redis";
+
+    /**
+     * 签名令牌配置
+     */
+    private Signed signed = new Signed();
+
+    /**
+     * 是否在本地缓存登录用户，默认开启
+     */
+    private boolean localEnabled = true;
+
+    /**
+     * 本地最多缓存的登录用户数
+     */
+    private int localMaximumSize = 100000;
+
+    /**
+     * 登录用户在本地缓存的时间。其他节点登出的通知丢失时，最多在这段时间内仍然认为用户已登录
+     */
+    private Duration localTtl = Duration.ofSeconds(10);
+
+    /**
+     * token 剩余的有效期低于这个值时才刷新（EXPIRE），不再每个请求都刷新
+     */
+    private Duration refreshThreshold = Duration.ofMinutes(20);
+
+    @Data
+    public static class Signed {
+        /**
+         * 签发令牌使用的密钥id
+         */
+        private String activeKey;
+
+        /**
+         * 密钥id -> 密钥。更换密钥时先加入新密钥并修改 activeKey，旧令牌全部过期后再删除旧密钥
+         */
+        private Map<String, String> keys = new LinkedHashMap<>();
+
+        /**
+         * 令牌有效期
+         */
+        private Duration ttl = Duration.ofMinutes(30);
+
+        /**
+         * 令牌剩余有效期低于这个值时签发新令牌，通过响应头 authorization 返回给客户端
+         */
+        private Duration reissueThreshold = Duration.ofMinutes(10);
+
+        /**
+         * 从Redis同步撤销列表的间隔（兜底丢失的登出通知）
+         */
+        private Duration revocationSyncInterval = Duration.ofSeconds(30);
+    }
+}
@@ -0,0 +1,162 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.aspect.CachedAspect;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.dto.Result;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheWarmer;
+import com.hmdp.utils.IdBloomFilter;
+import com.hmdp.utils.RateLimiter;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SessionCache;
+import com.hmdp.utils.SoldOutMarker;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * 监控控制器
+ *
+ * @author sundae
+ * @date 2024/11/20
+ */
+@RestController
+@RequestMapping("/monitor")
+public class MonitorController {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private IdBloomFilter idBloomFilter;
+
+    @Resource
+    private CachedAspect cachedAspect;
+
+    @Resource
+    private CacheWarmer cacheWarmer;
+
+    @Resource
+    private CacheProperties cacheProperties;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private SoldOutMarker soldOutMarker;
+
+    @Resource
+    private RateLimiter rateLimiter;
+
+    @Resource
+    private RedisIdWorker redisIdWorker;
+
+    @Resource
+    private SessionCache sessionCache;
+
+    @Resource
+    private IBlogService blogService;
+
+    /**
+     * 查询缓存的统计信息
+     *
+     * @return {@link Result }
+     */
+    @GetMapping("/cache")
+    public Result cacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("local", cacheClient.localCacheStats());
+        stats.put("passThroughFlight", cacheClient.passThroughFlightStats());
+        stats.put("earlyRefreshFlight", cacheClient.earlyRefreshFlightStats());
+        stats.put("bloom", idBloomFilter.stats());
+        stats.put("rebuild", cacheClient.rebuildStats());
+        stats.put("compression", cacheClient.compressionStats());
+        stats.put("annotation", cachedAspect.stats());
+        stats.put("warmUp", cacheWarmer.stats());
+        return Result.ok(stats);
+    }
+
+    /**
+     * 手动触发商铺缓存预热（例如Redis故障切换之后），预热在后台执行。需要开启 hmdp.cache.warm-up.manual-enabled
+     *
+     * @return {@link Result }
+     */
+    @PostMapping("/cache/warm-up")
+    public Result warmUp() {
+        if (!cacheProperties.getWarmUp().isManualEnabled()) {
+            return Result.fail("未开启手动预热！");
+        }
+        return cacheWarmer.start() ? Result.ok() : Result.fail("正在预热中！");
+    }
+
+    /**
+     * 查询秒杀订单各个分区的消费情况
+     *
+     * @return {@link Result }
+     */
+    @GetMapping("/seckill-order")
+    public Result seckillOrderStats() {
+        return Result.ok(voucherOrderService.orderStats());
+    }
+
+    /**
+     * 查询秒杀的统计信息
+     *
+     * @return {@link Result }
+     */
+    @GetMapping("/seckill")
+    public Result seckillStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("soldOut", soldOutMarker.stats());
+        return Result.ok(stats);
+    }
+
+    /**
+     * 查询各个接口的限流统计
+     *
+     * @return {@link Result }
+     */
+    @GetMapping("/rate-limit")
+    public Result rateLimitStats() {
+        return Result.ok(rateLimiter.stats());
+    }
+
+    /**
+     * 查询ID生成器的号段使用情况
+     *
+     * @return {@link Result }
+     */
+    @GetMapping("/id")
+    public Result idStats() {
+        return Result.ok(redisIdWorker.stats());
+    }
+
+    /**
+     * 查询登录用户本地缓存的统计信息
+     *
+     * @return {@link Result }
+     */
+    @GetMapping("/session")
+    public Result sessionStats() {
+        return Result.ok(sessionCache.stats());
+    }
+
+    /**
+     * 查询点赞数写回数据库的统计信息
+     *
+     * @return {@link Result }
+     */
+    @GetMapping("/blog-like")
+    public Result blogLikeStats() {
+        return Result.ok(blogService.likeStats());
+    }
+}
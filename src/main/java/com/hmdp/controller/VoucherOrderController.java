@@ -1,8 +1,10 @@
 package com.hmdp.controller;
 
 
+import com.hmdp.annotation.RateLimit;
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -30,7 +32,19 @@ public class VoucherOrderController {
      * @return {@link Result }
      */
     @PostMapping("seckill/{id}")
+    @RateLimit(value = "seckill", resource = "#voucherId")
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return iVoucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 查询秒杀排队结果（开启异步排队时，秒杀下单返回的是凭证）
+     *
+     * @param ticket 凭证
+     * @return {@link Result }
+     */
+    @GetMapping("seckill/ticket/{ticket}")
+    public Result queryTicket(@PathVariable("ticket") String ticket) {
+        return iVoucherOrderService.queryTicket(ticket);
+    }
 }
@@ -26,5 +26,10 @@ public class RedisData implements Serializable {
      * 到期时间
      */
     private LocalDateTime expireTime;
+
+    /**
+     * 上一次重建缓存的耗时（毫秒），用于提前刷新
+     */
+    private Long delta;
 }
 
@@ -1,20 +1,14 @@
 package com.hmdp.interceptor;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.SessionCache;
 import com.hmdp.utils.UserHolder;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.lang.Nullable;
 import org.springframework.web.servlet.HandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.time.Duration;
-import java.util.Map;
-
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
 
 /**
  * TokenRefreshInterceptor
@@ -24,11 +18,11 @@ import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
  * @description
  */
 public class TokenRefreshInterceptor implements HandlerInterceptor {
-    private final StringRedisTemplate stringRedisTemplate;
+    private final SessionCache sessionCache;
 
-    public TokenRefreshInterceptor(StringRedisTemplate stringRedisTemplate) {
+    public TokenRefreshInterceptor(SessionCache sessionCache) {
         // TokenRefreshInterceptor 不是由 Spring 创建的，因此不能使用依赖注入，也可以直接给这个类加上 @Component 注解
-        this.stringRedisTemplate = stringRedisTemplate;
+        this.sessionCache = sessionCache;
     }
 
     @Override
@@ -39,21 +33,21 @@ public class TokenRefreshInterceptor implements HandlerInterceptor {
             // 2. 如果 token 为空白（null/长度为0/全空白字符），放行
             return true;
         }
-        // 3. 基于 token 从 redis 获取用户
-        String userKey = LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(userKey);
+        // 3. 基于 token 获取用户（优先读本地缓存，token 的剩余有效期不足时才刷新）
+        UserDTO userDTO = sessionCache.get(token);
         // 4. 判断用户是否存在
-        if (userMap.isEmpty()) { // entries()方法返回时就会做null处理，因此不用判断是否为null了
+        if (userDTO == null) {
             // 5. 如果用户不存在，放行
             return true;
         }
-        // 6. 将查询到的 Hash 数据转为 UserDTO
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
-        // 7. 保存用户到 ThreadLocal （后续的请求处理链路中都可以方便地访问这些信息）
-        UserHolder.saveUser((UserDTO) userDTO);
-        // 8. 刷新 token 的有效期
-        stringRedisTemplate.expire(userKey, Duration.ofMinutes(LOGIN_USER_TTL));
-        // 9. 放行
+        // 6. 保存用户到 ThreadLocal （后续的请求处理链路中都可以方便地访问这些信息）
+        UserHolder.saveUser(userDTO);
+        // 7. 签名令牌快要过期时，通过响应头返回新令牌，客户端收到后替换保存的令牌
+        String reissued = sessionCache.reissue(token);
+        if (reissued != null) {
+            response.setHeader("authorization", reissued);
+        }
+        // 8. 放行
         return true;
     }
 
@@ -63,4 +57,3 @@ public class TokenRefreshInterceptor implements HandlerInterceptor {
         UserHolder.removeUser();
     }
 }
-
@@ -1,8 +1,11 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.Map;
+
 /**
  * <p>
  *  服务类
@@ -13,4 +16,23 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IBlogService extends IService<Blog> {
 
+    /**
+     * 当前用户点赞博客，已经点赞过时取消点赞
+     *
+     * @param id 博客id
+     * @return {@link Result }，data 为 true 表示点赞，false 表示取消点赞
+     */
+    Result likeBlog(Long id);
+
+    /**
+     * 把Redis中累计的点赞数变化批量写回数据库
+     *
+     * @return 更新的博客数
+     */
+    int flushLikes();
+
+    /**
+     * 点赞数写回数据库的统计信息
+     */
+    Map<String, Object> likeStats();
 }
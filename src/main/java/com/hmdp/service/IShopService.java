@@ -22,6 +22,14 @@ public interface IShopService extends IService<Shop> {
      */
     Result getShopById(Long id);
 
+    /**
+     * 新增商铺信息
+     *
+     * @param shop 商店
+     * @return {@link Result }
+     */
+    Result saveShop(Shop shop);
+
     /**
      * 根据 id 更新商铺信息
      *
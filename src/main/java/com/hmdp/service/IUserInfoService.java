@@ -12,4 +12,6 @@ import com.hmdp.entity.UserInfo;
  * @since 2021-12-24
  */
 public interface IUserInfoService extends IService<UserInfo> {
+
+    UserInfo queryUserInfo(Long userId);
 }
@@ -33,4 +33,12 @@ public interface IUserService extends IService<User> {
      * @return {@link Result }
      */
     Result login(LoginFormDTO loginForm, HttpSession session);
+
+    /**
+     * 用户登出，所有节点上的登录状态都会失效
+     *
+     * @param token 登录令牌
+     * @return {@link Result }
+     */
+    Result logout(String token);
 }
@@ -4,6 +4,9 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>
  *  服务类
@@ -21,10 +24,35 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
      */
     Result seckillVoucher(Long voucherId);
 
+    /**
+     * 查询异步排队凭证的状态
+     *
+     * @param ticket 秒杀下单时返回的凭证
+     * @return {@link Result }，status 为 queued（排队中）、succeeded（下单成功，orderId 为订单id）或者 failed（msg 为失败原因）；
+     * 凭证不存在（无效、已经过期或者不属于当前用户）时返回失败
+     */
+    Result queryTicket(String ticket);
+
     /**
      * 在MySQL中创建秒杀优惠券订单
      *
      * @param voucherOrder 优惠券订单
+     * @return 重复下单或者库存不足时返回false，这个订单已经创建过时返回true
+     */
+    boolean createVoucherOrder(VoucherOrder voucherOrder);
+
+    /**
+     * 在MySQL中批量创建秒杀优惠券订单：一条多行 INSERT，每个优惠券只扣减一次库存
+     *
+     * @param voucherOrders 优惠券订单
+     * @return 创建成功的订单（去掉了重复下单和库存不足的订单），包括已经创建过的同一个订单（重新处理已经提交的批次时）
+     */
+    List<VoucherOrder> createVoucherOrders(List<VoucherOrder> voucherOrders);
+
+    /**
+     * 各个订单分区的消费情况（队列长度、未确认数、处理延迟等）
+     *
+     * @return 分区 -> 统计信息
      */
-    void createVoucherOrder(VoucherOrder voucherOrder);
+    Map<String, Object> orderStats();
 }
@@ -1,9 +1,10 @@
 package com.hmdp.service;
 
-import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -14,7 +15,18 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IVoucherService extends IService<Voucher> {
 
-    Result queryVoucherOfShop(Long shopId);
+    List<Voucher> queryVoucherOfShop(Long shopId);
+
+    void addVoucher(Voucher voucher);
 
     void addSeckillVoucher(Voucher voucher);
+
+    /**
+     * 补充秒杀券库存，并清除所有节点的售罄标记
+     *
+     * @param voucherId 秒杀券id
+     * @param amount    补充的数量
+     * @return 补充成功返回true，秒杀券不存在返回false
+     */
+    boolean addSeckillStock(Long voucherId, Integer amount);
 }
@@ -1,20 +1,181 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.collection.CollUtil;
+import com.hmdp.config.BlogProperties;
+import com.hmdp.dto.Result;
 import com.hmdp.entity.Blog;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_DELTA_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+
 /**
  * <p>
  *  服务实现类
  * </p>
+ * 点赞记录在Redis中（每个博客一个zset，点赞和取消点赞在一个脚本中完成），同时累计每个博客点赞数的变化，
+ * 后台定时取出变化量批量写回 tb_blog.liked，点赞不再直接更新数据库中的同一行。
  *
  * @author 虎哥
  * @since 2021-12-22
  */
 @Service
+@Slf4j
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+    private static final DefaultRedisScript<List<Object>> LIKE_DRAIN_SCRIPT;
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("blog_like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+        LIKE_DRAIN_SCRIPT = new DefaultRedisScript<>();
+        LIKE_DRAIN_SCRIPT.setLocation(new ClassPathResource("blog_like_drain.lua"));
+        // 脚本返回数组，结果类型只能写 List.class
+        @SuppressWarnings("unchecked")
+        Class<List<Object>> listType = (Class<List<Object>>) (Class<?>) List.class;
+        LIKE_DRAIN_SCRIPT.setResultType(listType);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private BlogProperties blogProperties;
+
+    private ScheduledExecutorService likeFlusher;
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedBlogs = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        likeFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "blog-like-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = blogProperties.getLikeFlushInterval().toMillis();
+        likeFlusher.scheduleWithFixedDelay(() -> {
+            try {
+                flushLikes();
+            } catch (Exception e) {
+                log.error("点赞数写回数据库失败", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        likeFlusher.shutdownNow();
+        try {
+            // 停机前把剩下的变化写回去
+            flushLikes();
+        } catch (Exception e) {
+            log.error("点赞数写回数据库失败", e);
+        }
+    }
+
+    @Override
+    public Result likeBlog(Long id) {
+        Long userId = UserHolder.getUser().getId();
+        Long liked = stringRedisTemplate.execute(LIKE_SCRIPT,
+                Arrays.asList(BLOG_LIKED_KEY + id, BLOG_LIKED_DELTA_KEY),
+                userId.toString(), String.valueOf(System.currentTimeMillis()), id.toString());
+        return Result.ok(liked != null && liked == 1);
+    }
+
+    @Override
+    public int flushLikes() {
+        List<?> drained = stringRedisTemplate.execute(LIKE_DRAIN_SCRIPT, Collections.singletonList(BLOG_LIKED_DELTA_KEY));
+        if (CollUtil.isEmpty(drained)) {
+            return 0;
+        }
+        flushes.increment();
+        // 变化量 -> 博客id，变化量相同的博客用一条 UPDATE ... WHERE id IN (...) 更新
+        Map<Long, List<Long>> blogsByDelta = new HashMap<>();
+        for (int i = 0; i + 1 < drained.size(); i += 2) {
+            long delta = Long.parseLong(drained.get(i + 1).toString());
+            if (delta != 0) {
+                blogsByDelta.computeIfAbsent(delta, d -> new ArrayList<>()).add(Long.valueOf(drained.get(i).toString()));
+            }
+        }
+        int batchSize = Math.max(blogProperties.getLikeFlushBatchSize(), 1);
+        int updated = 0;
+        for (Map.Entry<Long, List<Long>> entry : blogsByDelta.entrySet()) {
+            long delta = entry.getKey();
+            // liked 是无符号数，减少时不能小于0
+            String sql = delta > 0
+                    ? "liked = IFNULL(liked, 0) + " + delta
+                    : "liked = IF(IFNULL(liked, 0) > " + -delta + ", liked - " + -delta + ", 0)";
+            for (List<Long> ids : CollUtil.split(entry.getValue(), batchSize)) {
+                try {
+                    update().setSql(sql).in("id", ids).update();
+                    statements.increment();
+                    updated += ids.size();
+                } catch (Exception e) {
+                    failures.increment();
+                    log.error("点赞数写回数据库失败，放回Redis等待下次写回：{}", ids, e);
+                    restoreDeltas(ids, delta);
+                }
+            }
+        }
+        flushedBlogs.add(updated);
+        return updated;
+    }
+
+    /**
+     * 写回失败的变化量加回Redis
+     */
+    private void restoreDeltas(List<Long> ids, long delta) {
+        byte[] key = BLOG_LIKED_DELTA_KEY.getBytes(StandardCharsets.UTF_8);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Long id : ids) {
+                    connection.hIncrBy(key, id.toString().getBytes(StandardCharsets.UTF_8), delta);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("点赞数变化放回Redis失败，丢失的变化：{} {}", ids, delta, e);
+        }
+    }
 
+    @Override
+    public Map<String, Object> likeStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("flushes", flushes.sum());
+        stats.put("blogs", flushedBlogs.sum());
+        stats.put("statements", statements.sum());
+        stats.put("failures", failures.sum());
+        Long pending = stringRedisTemplate.opsForHash().size(BLOG_LIKED_DELTA_KEY);
+        stats.put("pending", pending == null ? 0 : pending);
+        return stats;
+    }
 }
@@ -1,12 +1,13 @@
 package com.hmdp.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.annotation.CacheInvalidate;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.hmdp.utils.CacheClient;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.IdBloomFilter;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -26,10 +27,10 @@ import static com.hmdp.utils.RedisConstants.*;
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private CacheClient cacheClient;
 
     @Resource
-    private CacheClient cacheClient;
+    private IdBloomFilter idBloomFilter;
 
     @Override
     public Result getShopById(Long id) {
@@ -37,22 +38,34 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // Shop shop = cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
         // 利用逻辑过期解决缓存击穿
-        Shop shop = cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, LOCK_SHOP_KEY, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        // Shop shop = cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, LOCK_SHOP_KEY, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+
+        // 在逻辑过期的基础上提前刷新，分散热点key的重建
+        Shop shop = cacheClient.queryWithEarlyRefresh(CACHE_SHOP_KEY, id, Shop.class, LOCK_SHOP_KEY, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
         return shop == null ? Result.fail("商铺不存在！") : Result.ok(shop);
     }
 
+    @Override
+    public Result saveShop(Shop shop) {
+        // 1. 写入数据库
+        save(shop);
+        // 2. 加入布隆过滤器，否则新商铺会被当成不存在的id拦截掉
+        idBloomFilter.add(CACHE_SHOP_KEY, shop.getId());
+        // 3. 返回店铺id
+        return Result.ok(shop.getId());
+    }
+
     @Override
     @Transactional // 删除操作出现异常时将事务回滚
+    @CacheInvalidate(keyPrefix = CACHE_SHOP_KEY, key = "#shop.id") // 事务提交后删除缓存（同时通知所有节点删除本地缓存）
     public Result updateShop(Shop shop) {
         Long id = shop.getId();
         if (id == null) {
             return Result.fail("商铺 id 不能为空！");
         }
-        // 1. 修改数据库
+        // 修改数据库，缓存由 @CacheInvalidate 删除
         updateById(shop);
-        // 2. 删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
         return Result.ok();
     }
 }
@@ -1,11 +1,17 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.annotation.Cached;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_TTL;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +23,9 @@ import org.springframework.stereotype.Service;
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
+    @Override
+    @Cached(keyPrefix = CACHE_SHOP_TYPE_KEY, key = "'list'", ttl = CACHE_SHOP_TYPE_TTL)
+    public List<ShopType> queryTypeList() {
+        return query().orderByAsc("sort").list();
+    }
 }
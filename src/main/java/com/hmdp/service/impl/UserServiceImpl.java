@@ -1,7 +1,5 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -11,7 +9,10 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.RateLimiter;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SessionCache;
+import com.hmdp.utils.UserDTOMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -19,7 +20,7 @@ import org.springframework.stereotype.Service;
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
 import java.time.Duration;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static com.hmdp.utils.RedisConstants.*;
@@ -31,6 +32,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SessionCache sessionCache;
+
+    @Resource
+    private RateLimiter rateLimiter;
+
     @Override
     public Result sendCode(String phone, HttpSession session) {
         // 1. 校验手机号
@@ -38,11 +45,15 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             // 2. 如果不符合，返回错误信息
             return Result.fail("手机号格式错误！");
         }
-        // 3. 如果符合，生成验证码
+        // 3. 按手机号和IP限制发送频率，超过限制时不生成也不发送验证码
+        if (!rateLimiter.tryAcquireWindows(limitSubjects("sms-code", phone))) {
+            return Result.fail("发送验证码太频繁，请稍后再试！");
+        }
+        // 4. 如果符合，生成验证码
         String code = RandomUtil.randomNumbers(6);
-        // 4. 保存验证码到 redis 并设置有效期为2分钟
+        // 5. 保存验证码到 redis 并设置有效期为2分钟
         stringRedisTemplate.opsForValue().set(LOGIN_CODE_KEY + phone, code, Duration.ofMinutes(LOGIN_CODE_TTL));
-        // 5. 发送验证码（模拟）
+        // 6. 发送验证码（模拟）
         log.debug("发送短信验证码成功，验证码：{}", code);
         return Result.ok();
     }
@@ -53,6 +64,10 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         if (RegexUtils.isPhoneInvalid(phone)) {
             return Result.fail("手机号格式错误！");
         }
+        // 按手机号和IP限制尝试次数，防止穷举验证码
+        if (!rateLimiter.tryAcquireWindows(limitSubjects("login", phone))) {
+            return Result.fail("登录尝试次数过多，请稍后再试！");
+        }
         // 2. 从 Redis 中取出验证码并校验
         String cacheCode = stringRedisTemplate.opsForValue().get(LOGIN_CODE_KEY + phone);
         // 3. 如果不一致，返回错误信息
@@ -67,15 +82,16 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             // 6. 如果用户不存在，创建新用户并保存到 MySQL 中
             user = createUserWithPhone(phone);
         }
+        UserDTO userDTO = UserDTOMapper.fromUser(user);
+        if (sessionCache.isSigned()) {
+            // 签名令牌模式：令牌本身带有用户信息，不需要保存到 Redis
+            return Result.ok(sessionCache.issue(userDTO));
+        }
         // 7. 保存用户到 Redis
         // 7.1 生成随机 token 作为登录令牌
         String token = UUID.randomUUID().toString(true);
         // 7.2 将 User 转换为 Hash
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);// 这里使用 MapStruct 映射属性性能会更好
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO,
-                new HashMap<>(),
-                CopyOptions.create().setIgnoreNullValue(true)
-                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
+        Map<String, String> userMap = UserDTOMapper.toHash(userDTO);
         // 7.3 将 Hash 存储到 Redis 并设置有效期为30分钟
         String userKey = LOGIN_USER_KEY + token;
         stringRedisTemplate.opsForHash().putAll(userKey, userMap);
@@ -84,6 +100,22 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(token);
     }
 
+    @Override
+    public Result logout(String token) {
+        sessionCache.invalidate(token);
+        return Result.ok();
+    }
+
+    /**
+     * 限流的请求方：窗口 window 按手机号，窗口 window-ip 按客户端IP
+     */
+    private Map<String, String> limitSubjects(String window, String phone) {
+        Map<String, String> subjects = new LinkedHashMap<>(4);
+        subjects.put(window, phone);
+        subjects.put(window + "-ip", rateLimiter.clientIp());
+        return subjects;
+    }
+
     private User createUserWithPhone(String phone) {
         // 1. 创建用户
         User user = new User();
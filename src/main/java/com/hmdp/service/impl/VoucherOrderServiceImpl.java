@@ -1,27 +1,78 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.IdUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.config.SeckillProperties;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillStockShards;
+import com.hmdp.utils.SeckillTimeWindow;
+import com.hmdp.utils.SoldOutMarker;
 import com.hmdp.utils.UserHolder;
-import org.springframework.aop.framework.AopContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.concurrent.BlockingDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DEAD_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_GROUP;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_TICKET_KEY;
 
 /**
  * <p>
@@ -32,6 +83,7 @@ import java.util.concurrent.LinkedBlockingDeque;
  * @since 2021-12-22
  */
 @Service
+@Slf4j
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
     @Resource
     private ISeckillVoucherService iSeckillVoucherService;
@@ -39,71 +91,430 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private RedisIdWorker redisIdWorker;
 
+    @Resource
+    private SeckillProperties seckillProperties;
+
+    @Resource
+    private SoldOutMarker soldOutMarker;
+
+    @Resource
+    private SeckillStockShards seckillStockShards;
+
+    @Resource
+    private SeckillTimeWindow seckillTimeWindow;
+
+    /**
+     * 代理对象，保证消费线程中调用 createVoucherOrder 时事务生效（消费线程中拿不到 AopContext）
+     */
+    @Lazy
+    @Resource
+    private IVoucherOrderService proxy;
+
+    /**
+     * 排队凭证的状态
+     */
+    private static final String TICKET_QUEUED = "queued";
+    private static final String TICKET_SUCCEEDED = "succeeded";
+    private static final String TICKET_FAILED = "failed";
+
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<Long> STREAM_GROUP_SCRIPT;
     static {
         SECKILL_SCRIPT = new DefaultRedisScript<>();
         SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
         SECKILL_SCRIPT.setResultType(Long.class);
+        STREAM_GROUP_SCRIPT = new DefaultRedisScript<>();
+        STREAM_GROUP_SCRIPT.setLocation(new ClassPathResource("stream_group.lua"));
+        STREAM_GROUP_SCRIPT.setResultType(Long.class);
     }
 
-    // 异步处理线程池
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
-    private final BlockingDeque<VoucherOrder> orderTasks = new LinkedBlockingDeque<>(1024 * 1024);
-    private IVoucherOrderService proxy;
+    /**
+     * 订单消费线程池，每个分区一个线程，是这个分区消费者组中的一个消费者
+     */
+    private ExecutorService seckillOrderExecutor;
+    private final List<VoucherOrderHandler> handlers = new ArrayList<>();
+    private int partitions;
+    private volatile boolean running = true;
+
+    /**
+     * 多余分区的队列 -> 正在处理剩余订单的消费者，处理完之后移除
+     */
+    private final Map<String, VoucherOrderHandler> drainers = new ConcurrentHashMap<>();
+    private ExecutorService drainExecutor;
+    private ScheduledExecutorService orphanScanner;
+
+    /**
+     * 异步排队线程池，队列有界，满了之后直接拒绝请求
+     */
+    private ThreadPoolExecutor admissionExecutor;
+    private final LongAdder admissionRejected = new LongAdder();
 
     // 在类初始化之后执行，因为当这个类初始化好了之后，随时都是有可能要执行的
     @PostConstruct
     private void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        // 订单按优惠券id分区，同一个优惠券的订单按顺序处理，不同优惠券的订单并行处理
+        partitions = Math.max(seckillProperties.getOrder().getPartitions(), 1);
+        AtomicInteger threadNumber = new AtomicInteger();
+        seckillOrderExecutor = Executors.newFixedThreadPool(partitions, r -> {
+            Thread thread = new Thread(r, "seckill-order-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 进程号@主机名，用来区分不同节点的消费者
+        String node = ManagementFactory.getRuntimeMXBean().getName();
+        for (int i = 0; i < partitions; i++) {
+            VoucherOrderHandler handler = new VoucherOrderHandler(i, node, false);
+            handlers.add(handler);
+            seckillOrderExecutor.submit(handler);
+        }
+        // 分区数改小之后，多余分区的队列中可能还有订单，由临时的消费者处理完
+        drainExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "seckill-order-drain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        orphanScanner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "seckill-order-orphan-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long scanInterval = seckillProperties.getOrder().getOrphanScanInterval().toMillis();
+        orphanScanner.scheduleWithFixedDelay(() -> drainOrphanStreams(node), 0, scanInterval, TimeUnit.MILLISECONDS);
+        SeckillProperties.Admission admission = seckillProperties.getAdmission();
+        if (admission.isEnabled()) {
+            AtomicInteger admissionThreadNumber = new AtomicInteger();
+            int workers = Math.max(admission.getWorkers(), 1);
+            admissionExecutor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(admission.getCapacity(), 1)), r -> {
+                Thread thread = new Thread(r, "seckill-admission-" + admissionThreadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        // 没有确认的消息留在 pending-list 中，重启后或者由其他节点继续处理
+        running = false;
+        seckillOrderExecutor.shutdownNow();
+        orphanScanner.shutdownNow();
+        drainExecutor.shutdownNow();
+        if (admissionExecutor != null) {
+            admissionExecutor.shutdown();
+        }
     }
 
     @Override
     public Result seckillVoucher(Long voucherId) {
+        // 0. 本节点已经知道售罄了，直接拒绝，不访问Redis
+        if (soldOutMarker.isSoldOut(voucherId)) {
+            return Result.fail("库存不足！");
+        }
+        // 0. 根据本地缓存的秒杀时间判断，不在时间范围内直接拒绝，不访问Redis
+        long now = System.currentTimeMillis();
+        int window = seckillTimeWindow.check(voucherId, now);
+        if (window == SeckillTimeWindow.NOT_FOUND) {
+            return Result.fail("秒杀券不存在！");
+        }
+        if (window != SeckillTimeWindow.IN_WINDOW) {
+            return windowFail(window);
+        }
         // 1. 获取用户
         Long userId = UserHolder.getUser().getId();
-        // 2. 执行lua脚本
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(), userId.toString());
-        // 3. 判断结果是否为0
-        int r = 0;
-        if (result != null) {
-            r = result.intValue();
+        if (admissionExecutor != null) {
+            // 异步排队：进入队列后立即返回凭证，之后通过凭证查询结果
+            return admit(voucherId, userId, now);
         }
+        Long orderId = redisIdWorker.nextId("order");
+        // 2. 执行lua脚本，判断购买资格并把订单发送到优惠券所在分区的消息队列
+        int r = seckill(voucherId, userId, orderId, now, null);
+        // 3. 判断结果是否为0
         if (r != 0) {
-            // 3.1 不为0，代表没有购买资格
-            return r == 1 ? Result.fail("库存不足！") : Result.fail("不允许重复下单！");
+            return seckillFail(voucherId, r);
         }
-        // 3.2 为0，有购买资格，把下单信息保存到阻塞队列
-        Long orderId = redisIdWorker.nextId("order");
-        VoucherOrder voucherOrder = new VoucherOrder();
-        voucherOrder.setId(orderId);
-        voucherOrder.setUserId(userId);
-        voucherOrder.setVoucherId(voucherId);
-        orderTasks.add(voucherOrder);
-        // 4. 获取代理对象
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
-        // 5. 返回订单id
+        // 4. 为0，有购买资格，订单已经在消息队列中，返回订单id
         return Result.ok(orderId);
     }
 
+    /**
+     * 把请求放进排队队列，返回凭证。先把凭证状态写为排队中，查询时凭证不存在说明凭证无效或者已经过期
+     */
+    private Result admit(Long voucherId, Long userId, long now) {
+        String ticket = IdUtil.fastSimpleUUID();
+        String key = SECKILL_TICKET_KEY + ticket;
+        long ttlMillis = seckillProperties.getAdmission().getTicketTtl().toMillis();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            Map<byte[], byte[]> status = new HashMap<>(4);
+            status.put(bytes("status"), bytes(TICKET_QUEUED));
+            status.put(bytes("userId"), bytes(userId.toString()));
+            connection.hMSet(bytes(key), status);
+            connection.pExpire(bytes(key), ttlMillis);
+            return null;
+        });
+        try {
+            admissionExecutor.execute(() -> handleAdmission(ticket, voucherId, userId, now));
+        } catch (RejectedExecutionException e) {
+            admissionRejected.increment();
+            stringRedisTemplate.delete(key);
+            return Result.fail("排队人数过多，请稍后再试！");
+        }
+        return Result.ok(ticket);
+    }
+
+    /**
+     * 处理排队的请求：执行Lua脚本。成功时脚本把凭证状态写为排队中，失败时在这里写入失败原因
+     */
+    private void handleAdmission(String ticket, Long voucherId, Long userId, long now) {
+        String msg;
+        try {
+            Long orderId = redisIdWorker.nextId("order");
+            int r = seckill(voucherId, userId, orderId, now, ticket);
+            if (r == 0) {
+                return;
+            }
+            msg = seckillFail(voucherId, r).getErrorMsg();
+        } catch (Exception e) {
+            log.error("处理秒杀排队请求异常", e);
+            msg = "服务器异常";
+        }
+        Map<String, String> status = new HashMap<>(4);
+        status.put("status", TICKET_FAILED);
+        status.put("userId", userId.toString());
+        status.put("msg", msg);
+        String key = SECKILL_TICKET_KEY + ticket;
+        stringRedisTemplate.opsForHash().putAll(key, status);
+        stringRedisTemplate.expire(key, seckillProperties.getAdmission().getTicketTtl());
+    }
+
+    @Override
+    public Result queryTicket(String ticket) {
+        Map<Object, Object> status = stringRedisTemplate.opsForHash().entries(SECKILL_TICKET_KEY + ticket);
+        // 凭证在进入队列时就写入了，不存在说明凭证无效或者已经过期
+        if (status.isEmpty() || !UserHolder.getUser().getId().toString().equals(status.remove("userId"))) {
+            return Result.fail("凭证不存在！");
+        }
+        return Result.ok(status);
+    }
+
+    /**
+     * 执行秒杀脚本
+     *
+     * @param ticket 排队凭证，同步下单时为null
+     * @return 0 成功，1 库存不足，2 重复下单，3 尚未开始，4 已经结束（与 seckill.lua 的返回值一致）
+     */
+    private int seckill(Long voucherId, Long userId, Long orderId, long now, String ticket) {
+        long partition = voucherId % partitions;
+        if (seckillStockShards.shardCount(voucherId) > 1) {
+            return seckillWithShards(voucherId, userId, orderId, partition, now, ticket);
+        }
+        String[] args = ticket == null
+                ? new String[]{voucherId.toString(), userId.toString(), orderId.toString(), String.valueOf(partition), String.valueOf(now)}
+                : new String[]{voucherId.toString(), userId.toString(), orderId.toString(), String.valueOf(partition), String.valueOf(now),
+                ticket, String.valueOf(seckillProperties.getAdmission().getTicketTtl().toMillis())};
+        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT, Collections.emptyList(), (Object[]) args);
+        return result == null ? 0 : result.intValue();
+    }
+
+    /**
+     * 秒杀脚本返回非0时的处理
+     */
+    private Result seckillFail(Long voucherId, int r) {
+        if (r == 1) {
+            // 库存不足，标记售罄，之后的请求在本地拒绝
+            soldOutMarker.markSoldOut(voucherId);
+            return Result.fail("库存不足！");
+        }
+        if (r == SeckillTimeWindow.NOT_STARTED || r == SeckillTimeWindow.ENDED) {
+            // 不在秒杀时间内（本地缓存的时间和Redis中的不一致时才会走到这里）
+            return windowFail(r);
+        }
+        // 不为0，代表没有购买资格
+        return Result.fail("不允许重复下单！");
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Result windowFail(int window) {
+        return window == SeckillTimeWindow.NOT_STARTED ? Result.fail("秒杀尚未开始！") : Result.fail("秒杀已经结束！");
+    }
+
+    /**
+     * 库存分片模式下的秒杀：在用户所在的分片上判断一人一单并扣减库存，成功后发送订单消息，发送失败时撤销
+     *
+     * @return 0 成功，1 库存不足，2 重复下单，3 尚未开始，4 已经结束（与 seckill.lua 的返回值一致）
+     */
+    private int seckillWithShards(Long voucherId, Long userId, Long orderId, long partition, long now, String ticket) {
+        // 1. 判断购买资格并扣减库存（一般只访问用户所在的一个分片）
+        SeckillStockShards.Claim claim = seckillStockShards.tryAcquire(voucherId, userId, now);
+        if (claim.getCode() != SeckillStockShards.OK) {
+            return claim.getCode();
+        }
+        // 2. 发送订单消息（订单队列和分片不在同一个槽，不能放在同一个脚本中）
+        try {
+            sendOrderMessage(voucherId, userId, orderId, partition, ticket, claim);
+        } catch (RuntimeException e) {
+            seckillStockShards.release(voucherId, userId, claim);
+            throw e;
+        }
+        return 0;
+    }
+
+    /**
+     * 用管道发送订单消息，异步下单时同时记录排队状态（与 seckill.lua 中的写法一致）。
+     * 消息中记录用户所在的分片和扣减库存的分片，订单放弃处理时用来归还
+     */
+    private void sendOrderMessage(Long voucherId, Long userId, Long orderId, long partition, String ticket,
+                                  SeckillStockShards.Claim claim) {
+        Map<String, String> message = new LinkedHashMap<>(8);
+        message.put("userId", userId.toString());
+        message.put("voucherId", voucherId.toString());
+        message.put("id", orderId.toString());
+        if (ticket != null) {
+            message.put("ticket", ticket);
+        }
+        message.put("shard", String.valueOf(claim.getHomeShard()));
+        message.put("stockShard", String.valueOf(claim.getStockShard()));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            if (ticket != null) {
+                byte[] key = bytes(SECKILL_TICKET_KEY + ticket);
+                Map<byte[], byte[]> status = new HashMap<>(4);
+                status.put(bytes("status"), bytes(TICKET_QUEUED));
+                status.put(bytes("userId"), bytes(userId.toString()));
+                status.put(bytes("orderId"), bytes(orderId.toString()));
+                connection.hMSet(key, status);
+                connection.pExpire(key, seckillProperties.getAdmission().getTicketTtl().toMillis());
+            }
+            Map<byte[], byte[]> body = new LinkedHashMap<>(8);
+            message.forEach((field, value) -> body.put(bytes(field), bytes(value)));
+            connection.streamCommands().xAdd(StreamRecords.newRecord()
+                    .in(bytes(SECKILL_ORDER_STREAM_KEY + ":" + partition)).ofMap(body));
+            return null;
+        });
+    }
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 找出编号大于等于当前分区数的订单队列，为每个队列启动一个临时消费者，处理完剩下的订单后退出
+     */
+    private void drainOrphanStreams(String node) {
+        try {
+            String prefix = SECKILL_ORDER_STREAM_KEY + ":";
+            Set<String> keys = stringRedisTemplate.execute((RedisCallback<Set<String>>) connection -> {
+                Set<String> found = new HashSet<>();
+                try (Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions().match(prefix + "*").count(100).build())) {
+                    cursor.forEachRemaining(key -> found.add(new String(key, StandardCharsets.UTF_8)));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return found;
+            });
+            if (keys == null) {
+                return;
+            }
+            for (String key : keys) {
+                int partition;
+                try {
+                    partition = Integer.parseInt(key.substring(prefix.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (partition < partitions || drainers.containsKey(key)) {
+                    continue;
+                }
+                VoucherOrderHandler drainer = new VoucherOrderHandler(partition, node, true);
+                if (drainers.putIfAbsent(key, drainer) == null) {
+                    log.info("订单队列{}超出了当前的分区数{}，开始处理其中剩下的订单", key, partitions);
+                    drainExecutor.execute(drainer);
+                }
+            }
+        } catch (Exception e) {
+            log.error("检查多余的订单队列失败", e);
+        }
+    }
+
+    /**
+     * 订单放弃处理后归还Redis中的库存并删除用户的购买记录，用户可以重新下单
+     *
+     * @param message      订单消息
+     * @param voucherOrder 订单
+     */
+    private void refund(Map<Object, Object> message, VoucherOrder voucherOrder) {
+        Long voucherId = voucherOrder.getVoucherId();
+        Long userId = voucherOrder.getUserId();
+        if (voucherId == null || userId == null) {
+            return;
+        }
+        if (seckillStockShards.shardCount(voucherId) > 1) {
+            Object shard = message.get("shard");
+            Object stockShard = message.get("stockShard");
+            if (shard == null || stockShard == null) {
+                log.warn("订单消息中没有分片信息，无法归还库存：{}", voucherOrder.getId());
+                return;
+            }
+            seckillStockShards.release(voucherId, userId, Integer.parseInt(shard.toString()), Integer.parseInt(stockShard.toString()));
+        } else {
+            stringRedisTemplate.opsForSet().remove(SECKILL_ORDER_KEY + voucherId, userId.toString());
+            stringRedisTemplate.opsForValue().increment(SECKILL_STOCK_KEY + voucherId);
+        }
+        soldOutMarker.restocked(voucherId);
+    }
+
+    /**
+     * 数据库或者Redis暂时不可用（连接失败、超时、死锁等），稍后重试可能成功
+     */
+    private static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof TransientDataAccessException || t instanceof RecoverableDataAccessException
+                    || t instanceof DataAccessResourceFailureException || t instanceof CannotCreateTransactionException
+                    || t instanceof SQLTransientException || t instanceof SQLRecoverableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Map<String, Object> orderStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (VoucherOrderHandler handler : handlers) {
+            stats.put("partition-" + handler.partition, handler.stats());
+        }
+        for (VoucherOrderHandler drainer : drainers.values()) {
+            stats.put("draining-" + drainer.partition, drainer.stats());
+        }
+        if (admissionExecutor != null) {
+            Map<String, Object> admission = new LinkedHashMap<>();
+            admission.put("queued", admissionExecutor.getQueue().size());
+            admission.put("active", admissionExecutor.getActiveCount());
+            admission.put("completed", admissionExecutor.getCompletedTaskCount());
+            admission.put("rejected", admissionRejected.sum());
+            stats.put("admission", admission);
+        }
+        return stats;
+    }
+
     @Transactional
     @Override
-    public void createVoucherOrder(VoucherOrder voucherOrder) {
+    public boolean createVoucherOrder(VoucherOrder voucherOrder) {
         Long voucherId = voucherOrder.getVoucherId();
         Long userId = voucherOrder.getUserId();
         // 一人一单判断
-        int count = query().eq("voucher_id", voucherId)
+        List<VoucherOrder> existing = query().select("id")
+                .eq("voucher_id", voucherId)
                 .eq("user_id", userId)
-                .count();
-        if (count > 0) {
+                .list();
+        if (!existing.isEmpty()) {
+            // 订单已经提交过（提交之后、确认消息之前宕机，消息被重新处理），算作成功
+            if (existing.stream().anyMatch(order -> order.getId().equals(voucherOrder.getId()))) {
+                return true;
+            }
             log.error("不允许重复下单！");
-            return;
+            return false;
         }
         // 扣减库存
         boolean success = iSeckillVoucherService.update()
@@ -113,33 +524,452 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 .update();
         if (!success) {
             log.error("库存不足！");
-            return;
+            return false;
         }
         save(voucherOrder);
+        return true;
+    }
+
+    @Transactional
+    @Override
+    public List<VoucherOrder> createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        // 1. 一人一单判断：批次内去重，再一次查询出数据库中已经存在的订单
+        Map<String, VoucherOrder> unique = new LinkedHashMap<>();
+        for (VoucherOrder order : voucherOrders) {
+            if (unique.putIfAbsent(order.getVoucherId() + ":" + order.getUserId(), order) != null) {
+                log.error("不允许重复下单！订单：{}", order.getId());
+            }
+        }
+        Set<Long> voucherIds = new HashSet<>();
+        Set<Long> userIds = new HashSet<>();
+        for (VoucherOrder order : unique.values()) {
+            voucherIds.add(order.getVoucherId());
+            userIds.add(order.getUserId());
+        }
+        List<VoucherOrder> existing = query().select("id", "voucher_id", "user_id")
+                .in("voucher_id", voucherIds)
+                .in("user_id", userIds)
+                .list();
+        // 重新处理已经提交过的批次时（提交之后、确认消息之前宕机），订单已经存在，算作成功，不再扣减库存
+        List<VoucherOrder> committed = new ArrayList<>();
+        for (VoucherOrder order : existing) {
+            VoucherOrder duplicate = unique.remove(order.getVoucherId() + ":" + order.getUserId());
+            if (duplicate == null) {
+                continue;
+            }
+            if (order.getId().equals(duplicate.getId())) {
+                committed.add(duplicate);
+            } else {
+                log.error("不允许重复下单！订单：{}", duplicate.getId());
+            }
+        }
+        // 2. 按优惠券分组，每个优惠券扣减一次库存 stock = stock - k
+        Map<Long, List<VoucherOrder>> ordersByVoucher = new LinkedHashMap<>();
+        for (VoucherOrder order : unique.values()) {
+            ordersByVoucher.computeIfAbsent(order.getVoucherId(), k -> new ArrayList<>()).add(order);
+        }
+        List<VoucherOrder> accepted = new ArrayList<>(unique.size());
+        for (Map.Entry<Long, List<VoucherOrder>> entry : ordersByVoucher.entrySet()) {
+            List<VoucherOrder> orders = entry.getValue();
+            boolean success = iSeckillVoucherService.update()
+                    .setSql("stock = stock - " + orders.size())
+                    .eq("voucher_id", entry.getKey())
+                    .ge("stock", orders.size())
+                    .update();
+            if (success) {
+                accepted.addAll(orders);
+                continue;
+            }
+            // 库存不够整批扣减（Redis和数据库的库存不一致），退回到逐个扣减，能扣多少算多少
+            for (VoucherOrder order : orders) {
+                success = iSeckillVoucherService.update()
+                        .setSql("stock = stock - 1")
+                        .eq("voucher_id", entry.getKey())
+                        .gt("stock", 0)
+                        .update();
+                if (!success) {
+                    log.error("库存不足！订单：{}", order.getId());
+                    break;
+                }
+                accepted.add(order);
+            }
+        }
+        // 3. 一条多行 INSERT 保存订单
+        if (!accepted.isEmpty()) {
+            getBaseMapper().insertBatch(accepted);
+        }
+        accepted.addAll(committed);
+        return accepted;
     }
 
     // 用于线程池处理的任务
-    // 当初始化完毕后，就会去从对列中去拿信息
+    // 从消息队列中读取订单，处理成功后确认（XACK）；没有确认的订单留在 pending-list 中，由 recoverPending 重新处理
     private class VoucherOrderHandler implements Runnable {
+        private final int partition;
+        private final String streamKey;
+        private final String consumerName;
+
+        /**
+         * 多余分区的临时消费者：队列中没有新消息并且没有未确认的消息时退出
+         */
+        private final boolean drain;
+
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder deadLettered = new LongAdder();
+
+        /**
+         * 消息id -> 确定性失败的次数（没有使用投递次数，因为每次重新读取 pending-list 都会增加投递次数）
+         */
+        private final Map<RecordId, Integer> failures = new HashMap<>();
+
+        /**
+         * pending-list 的重试等待时间和下次重试的时间，没有失败的订单时为0
+         */
+        private long retryBackoffMillis;
+        private long nextRetryTime;
+
+        /**
+         * 最近一批订单从进入队列到写入数据库的延迟（毫秒）
+         */
+        private volatile long lagMillis;
+
+        /**
+         * 最近一次写入数据库的时间
+         */
+        private volatile long lastFlushTime;
+
+        private VoucherOrderHandler(int partition, String node, boolean drain) {
+            this.partition = partition;
+            this.drain = drain;
+            this.streamKey = SECKILL_ORDER_STREAM_KEY + ":" + partition;
+            // 消费者名称在所有节点间唯一
+            this.consumerName = node + "-" + partition;
+        }
+
         @Override
         public void run() {
-            while (true) {
+            try {
+                consume();
+            } finally {
+                if (drain) {
+                    drainers.remove(streamKey);
+                }
+            }
+        }
+
+        private void consume() {
+            createGroup();
+            // 先处理上次没确认的订单
+            recoverPending();
+            SeckillProperties.Order order = seckillProperties.getOrder();
+            List<MapRecord<String, Object, Object>> batch = new ArrayList<>();
+            long deadline = 0;
+            while (running) {
                 try {
-                    // 1.获取队列中的订单信息
-                    VoucherOrder voucherOrder = orderTasks.take();
-                    // 2.创建订单
-                    handleVoucherOrder(voucherOrder);
+                    // 1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT n BLOCK t STREAMS stream.orders:0 >
+                    // 攒批时只等到这一批的截止时间（BLOCK 0 表示一直阻塞，所以至少等1ms）
+                    Duration block = batch.isEmpty() ? order.getBlockTimeout()
+                            : Duration.ofMillis(Math.max(deadline - System.currentTimeMillis(), 1));
+                    @SuppressWarnings("unchecked")
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(SECKILL_ORDER_GROUP, consumerName),
+                            StreamReadOptions.empty().count(order.getBatchSize() - batch.size()).block(block),
+                            StreamOffset.create(streamKey, ReadOffset.lastConsumed()));
+                    if (list != null && !list.isEmpty()) {
+                        if (batch.isEmpty()) {
+                            deadline = System.currentTimeMillis() + order.getBatchWait().toMillis();
+                        }
+                        batch.addAll(list);
+                    }
+                    // 2.凑够一批或者到了截止时间，批量创建订单并确认
+                    if (batch.size() >= order.getBatchSize()
+                            || (!batch.isEmpty() && System.currentTimeMillis() >= deadline)) {
+                        if (!handleVoucherOrders(batch) && nextRetryTime == 0) {
+                            retryLater();
+                        }
+                        batch.clear();
+                    } else if (batch.isEmpty()) {
+                        // 3.没有新消息，趁空闲处理 pending-list（有失败的订单时等到重试时间）
+                        recoverPending();
+                        if (drain && isDrained()) {
+                            log.info("订单队列{}中的订单已经处理完", streamKey);
+                            return;
+                        }
+                    }
                 } catch (Exception e) {
+                    if (!running) {
+                        return;
+                    }
                     log.error("处理订单异常", e);
+                    // 没有确认的订单还在 pending-list 中，丢弃本地的批次，由 recoverPending 重新处理
+                    batch.clear();
+                    // 消费者组可能被删除了（例如Redis数据丢失），重新创建
+                    createGroup();
+                    retryLater();
+                }
+            }
+        }
+
+        /**
+         * 批量创建订单，一次确认整批消息。批量写入失败时逐个创建，失败的订单留在 pending-list 中等待重试，
+         * 确定性失败的次数达到上限的订单转入死信队列
+         *
+         * @return 没有留在 pending-list 中的订单（全部处理成功或者转入死信队列）时返回true
+         */
+        private boolean handleVoucherOrders(List<MapRecord<String, Object, Object>> records) {
+            List<VoucherOrder> orders = new ArrayList<>(records.size());
+            for (MapRecord<String, Object, Object> record : records) {
+                orders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+            }
+            try {
+                // 注意：由于是spring的事务是放在threadLocal中，此时的是多线程，事务会失效
+                List<VoucherOrder> accepted = proxy.createVoucherOrders(orders);
+                // XACK stream.orders:0 g1 id...
+                stringRedisTemplate.opsForStream().acknowledge(streamKey, SECKILL_ORDER_GROUP,
+                        records.stream().map(MapRecord::getId).toArray(RecordId[]::new));
+                Set<Long> acceptedIds = new HashSet<>();
+                for (VoucherOrder voucherOrder : accepted) {
+                    acceptedIds.add(voucherOrder.getId());
                 }
+                List<Boolean> created = new ArrayList<>(orders.size());
+                for (VoucherOrder voucherOrder : orders) {
+                    created.add(acceptedIds.contains(voucherOrder.getId()));
+                }
+                updateTickets(records, created);
+                recordProcessed(records, records.size());
+                return true;
+            } catch (Exception e) {
+                log.error("批量创建订单失败，逐个重试", e);
             }
+            int succeeded = 0;
+            int handled = 0;
+            for (int i = 0; i < records.size(); i++) {
+                MapRecord<String, Object, Object> record = records.get(i);
+                boolean created;
+                try {
+                    created = proxy.createVoucherOrder(orders.get(i));
+                } catch (Exception e) {
+                    failed.increment();
+                    if (isTransient(e)) {
+                        // 数据库暂时不可用，剩下的订单也留在 pending-list 中，等待重试
+                        log.error("创建订单失败，稍后重试：{}", orders.get(i).getId(), e);
+                        break;
+                    }
+                    log.error("创建订单失败：{}", orders.get(i).getId(), e);
+                    if (failures.merge(record.getId(), 1, Integer::sum) >= seckillProperties.getOrder().getMaxDeliveries()
+                            && deadLetter(record, orders.get(i), e)) {
+                        handled++;
+                    }
+                    continue;
+                }
+                try {
+                    stringRedisTemplate.opsForStream().acknowledge(streamKey, SECKILL_ORDER_GROUP, record.getId());
+                } catch (Exception e) {
+                    // 订单已经提交，重新处理时会被识别为已经创建的订单
+                    log.error("确认订单消息失败：{}", record.getId(), e);
+                    continue;
+                }
+                failures.remove(record.getId());
+                updateTickets(Collections.singletonList(record), Collections.singletonList(created));
+                succeeded++;
+                handled++;
+            }
+            recordProcessed(records, succeeded);
+            return handled == records.size();
         }
 
-        private void handleVoucherOrder(VoucherOrder voucherOrder) {
-            // 获取用户
-            Long userId = voucherOrder.getUserId();
-            // 注意：由于是spring的事务是放在threadLocal中，此时的是多线程，事务会失效
-            proxy.createVoucherOrder(voucherOrder);
+        /**
+         * 放弃处理一条订单：转入死信队列并确认，归还Redis中的库存和购买资格，把排队凭证更新为失败
+         *
+         * @return 成功转入死信队列返回true，失败时消息留在 pending-list 中
+         */
+        private boolean deadLetter(MapRecord<String, Object, Object> record, VoucherOrder voucherOrder, Exception cause) {
+            Map<String, String> body = new LinkedHashMap<>();
+            record.getValue().forEach((field, value) -> body.put(field.toString(), value.toString()));
+            body.put("stream", streamKey);
+            body.put("messageId", record.getId().getValue());
+            body.put("error", String.valueOf(cause));
+            try {
+                // XADD stream.orders.dead * k1 v1 ...，然后 XACK
+                stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DEAD_KEY, body);
+                stringRedisTemplate.opsForStream().acknowledge(streamKey, SECKILL_ORDER_GROUP, record.getId());
+            } catch (Exception e) {
+                log.error("订单转入死信队列失败：{}", voucherOrder.getId(), e);
+                return false;
+            }
+            failures.remove(record.getId());
+            deadLettered.increment();
+            log.error("订单多次创建失败，转入死信队列{}：{}", SECKILL_ORDER_DEAD_KEY, voucherOrder.getId());
+            try {
+                refund(record.getValue(), voucherOrder);
+            } catch (Exception e) {
+                log.error("归还秒杀库存失败：{}", voucherOrder.getId(), e);
+            }
+            updateTickets(Collections.singletonList(record), Collections.singletonList(false));
+            return true;
+        }
+
+        /**
+         * 异步排队的订单写入数据库后，用管道批量更新凭证的状态
+         *
+         * @param records 订单消息
+         * @param created 每条消息对应的订单是否创建成功
+         */
+        private void updateTickets(List<MapRecord<String, Object, Object>> records, List<Boolean> created) {
+            Map<String, Boolean> tickets = new LinkedHashMap<>();
+            for (int i = 0; i < records.size(); i++) {
+                Object ticket = records.get(i).getValue().get("ticket");
+                if (ticket != null) {
+                    tickets.put(ticket.toString(), created.get(i));
+                }
+            }
+            if (tickets.isEmpty()) {
+                return;
+            }
+            long ttlMillis = seckillProperties.getAdmission().getTicketTtl().toMillis();
+            try {
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    tickets.forEach((ticket, success) -> {
+                        byte[] key = (SECKILL_TICKET_KEY + ticket).getBytes(StandardCharsets.UTF_8);
+                        Map<byte[], byte[]> status = new HashMap<>(4);
+                        status.put(bytes("status"), bytes(success ? TICKET_SUCCEEDED : TICKET_FAILED));
+                        if (!success) {
+                            status.put(bytes("msg"), bytes("下单失败！"));
+                        }
+                        connection.hMSet(key, status);
+                        // 凭证可能已经过期，重新设置存活时间，避免留下永久的key
+                        connection.pExpire(key, ttlMillis);
+                    });
+                    return null;
+                });
+            } catch (Exception e) {
+                // 订单已经处理完成，凭证状态更新失败不影响确认
+                log.error("更新排队凭证状态失败：{}", tickets.keySet(), e);
+            }
+        }
+
+        private void recordProcessed(List<MapRecord<String, Object, Object>> records, int count) {
+            lastFlushTime = System.currentTimeMillis();
+            processed.add(count);
+            // 消息id的前半部分就是进入队列的时间戳，取这一批中最早的一条
+            String id = records.get(0).getId().getValue();
+            lagMillis = lastFlushTime - Long.parseLong(id.substring(0, id.indexOf('-')));
+        }
+
+        /**
+         * 消费者组中没有未确认的消息（包括其他节点的消费者名下的）
+         */
+        private boolean isDrained() {
+            return stringRedisTemplate.opsForStream().pending(streamKey, SECKILL_ORDER_GROUP).getTotalPendingMessages() == 0;
+        }
+
+        private Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("stream", streamKey);
+            stats.put("consumer", consumerName);
+            try {
+                stats.put("length", stringRedisTemplate.opsForStream().size(streamKey));
+                stats.put("pending", stringRedisTemplate.opsForStream().pending(streamKey, SECKILL_ORDER_GROUP).getTotalPendingMessages());
+            } catch (Exception e) {
+                // 队列或者消费者组还没创建
+                stats.put("length", 0);
+                stats.put("pending", 0);
+            }
+            stats.put("processed", processed.sum());
+            stats.put("failed", failed.sum());
+            stats.put("deadLettered", deadLettered.sum());
+            stats.put("lagMillis", lagMillis);
+            stats.put("idleMillis", lastFlushTime == 0 ? -1 : System.currentTimeMillis() - lastFlushTime);
+            return stats;
+        }
+
+        /**
+         * 处理 pending-list：先把其他消费者超时未确认的消息转移给自己，再逐条处理自己名下的消息。
+         * 有失败的订单时等到重试时间再重新读取，每次读取都会增加消息的投递次数
+         */
+        private void recoverPending() {
+            try {
+                claimStale();
+                if (System.currentTimeMillis() < nextRetryTime) {
+                    return;
+                }
+                while (running) {
+                    // XREADGROUP GROUP g1 c1 COUNT n STREAMS stream.orders:0 0
+                    @SuppressWarnings("unchecked")
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(SECKILL_ORDER_GROUP, consumerName),
+                            StreamReadOptions.empty().count(seckillProperties.getOrder().getBatchSize()),
+                            StreamOffset.create(streamKey, ReadOffset.from("0")));
+                    if (list == null || list.isEmpty()) {
+                        // pending-list 已经处理完
+                        failures.clear();
+                        retryBackoffMillis = 0;
+                        nextRetryTime = 0;
+                        return;
+                    }
+                    if (!handleVoucherOrders(list)) {
+                        // 逐个重试后仍有失败的订单，等到重试时间再处理，避免在这里死循环
+                        retryLater();
+                        return;
+                    }
+                }
+            } catch (Exception e) {
+                log.error("处理pending-list订单异常", e);
+                retryLater();
+            }
+        }
+
+        /**
+         * 推迟 pending-list 的下次重试，每次推迟的时间翻倍，不超过 maxRetryBackoff
+         */
+        private void retryLater() {
+            SeckillProperties.Order order = seckillProperties.getOrder();
+            retryBackoffMillis = retryBackoffMillis == 0 ? order.getRetryBackoff().toMillis()
+                    : Math.min(retryBackoffMillis * 2, order.getMaxRetryBackoff().toMillis());
+            nextRetryTime = System.currentTimeMillis() + retryBackoffMillis;
+        }
+
+        /**
+         * 转移其他消费者超时未确认的消息
+         */
+        private void claimStale() {
+            SeckillProperties.Order order = seckillProperties.getOrder();
+            PendingMessages pending = stringRedisTemplate.opsForStream()
+                    .pending(streamKey, SECKILL_ORDER_GROUP, Range.unbounded(), 100);
+            List<RecordId> stale = new ArrayList<>();
+            for (PendingMessage message : pending) {
+                if (!consumerName.equals(message.getConsumerName())
+                        && message.getElapsedTimeSinceLastDelivery().compareTo(order.getClaimIdle()) >= 0) {
+                    stale.add(message.getId());
+                }
+            }
+            if (stale.isEmpty()) {
+                return;
+            }
+            // XCLAIM stream.orders:0 g1 c1 minIdle id...
+            stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection -> connection.streamCommands().xClaimJustId(
+                    streamKey.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP, consumerName,
+                    RedisStreamCommands.XClaimOptions.minIdle(order.getClaimIdle()).ids(stale)));
+            log.info("{}接管了{}条超时未确认的订单", consumerName, stale.size());
+        }
+
+        private void createGroup() {
+            while (running) {
+                try {
+                    stringRedisTemplate.execute(STREAM_GROUP_SCRIPT,
+                            Collections.singletonList(streamKey), SECKILL_ORDER_GROUP);
+                    return;
+                } catch (Exception e) {
+                    log.error("创建订单消费者组失败", e);
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
         }
     }
 }
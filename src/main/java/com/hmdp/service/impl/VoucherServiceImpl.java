@@ -1,20 +1,25 @@
 package com.hmdp.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.dto.Result;
+import com.hmdp.annotation.CacheInvalidate;
+import com.hmdp.annotation.CacheStrategy;
+import com.hmdp.annotation.Cached;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.IdBloomFilter;
+import com.hmdp.utils.SeckillStockShards;
+import com.hmdp.utils.SeckillTimeWindow;
+import com.hmdp.utils.SoldOutMarker;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.util.List;
 
-import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -31,18 +36,35 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     private ISeckillVoucherService seckillVoucherService;
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private IdBloomFilter idBloomFilter;
+
+    @Resource
+    private SoldOutMarker soldOutMarker;
+
+    @Resource
+    private SeckillStockShards seckillStockShards;
+
+    @Resource
+    private SeckillTimeWindow seckillTimeWindow;
 
     @Override
-    public Result queryVoucherOfShop(Long shopId) {
+    @Cached(keyPrefix = CACHE_SHOP_VOUCHER_KEY, key = "#shopId", strategy = CacheStrategy.MUTEX, ttl = CACHE_SHOP_VOUCHER_TTL)
+    public List<Voucher> queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
-        // 返回结果
-        return Result.ok(vouchers);
+        return getBaseMapper().queryVoucherOfShop(shopId);
+    }
+
+    @Override
+    @CacheInvalidate(keyPrefix = CACHE_SHOP_VOUCHER_KEY, key = "#voucher.shopId")
+    public void addVoucher(Voucher voucher) {
+        save(voucher);
+        // 加入布隆过滤器
+        idBloomFilter.add(CACHE_VOUCHER_KEY, voucher.getId());
     }
 
     @Override
     @Transactional
+    @CacheInvalidate(keyPrefix = CACHE_SHOP_VOUCHER_KEY, key = "#voucher.shopId")
     public void addSeckillVoucher(Voucher voucher) {
         // 保存优惠券
         save(voucher);
@@ -53,7 +75,33 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
-        // 保存秒杀优惠券库存到Redis
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        // 保存秒杀优惠券库存到Redis（开启分片时拆分到多个key上）
+        seckillStockShards.initStock(voucher.getId(), voucher.getStock());
+        // 保存秒杀时间到Redis，seckill.lua 据此拒绝不在时间范围内的请求
+        seckillTimeWindow.save(voucher.getId(), voucher.getBeginTime(), voucher.getEndTime());
+        // 加入布隆过滤器
+        idBloomFilter.add(CACHE_VOUCHER_KEY, voucher.getId());
+    }
+
+    @Override
+    @Transactional
+    @CacheInvalidate(keyPrefix = CACHE_SHOP_VOUCHER_KEY, key = "@voucherServiceImpl.getById(#voucherId)?.shopId") // 店铺的优惠券列表中有库存
+    public boolean addSeckillStock(Long voucherId, Integer amount) {
+        if (amount == null || amount <= 0) {
+            // 负数会减少库存，0没有意义
+            throw new IllegalArgumentException("补充的库存必须大于0：" + amount);
+        }
+        // 补充MySQL中的库存
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock + " + amount)
+                .eq("voucher_id", voucherId)
+                .update();
+        if (!success) {
+            return false;
+        }
+        // 补充Redis中的库存，并通知所有节点清除售罄标记
+        seckillStockShards.addStock(voucherId, amount);
+        soldOutMarker.restocked(voucherId);
+        return true;
     }
 }
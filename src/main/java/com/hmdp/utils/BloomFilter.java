@@ -0,0 +1,132 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * BloomFilter
+ *
+ * @author sundae
+ * @date 2024/11/22
+ * @description 基于long类型id的布隆过滤器。判断不存在就一定不存在，判断存在则有一定的误判率。线程安全。
+ */
+public class BloomFilter {
+    /**
+     * 位数组，每个long保存64位
+     */
+    private final AtomicLongArray bits;
+
+    /**
+     * 位数组的总位数
+     */
+    private final long bitSize;
+
+    /**
+     * 哈希函数个数
+     */
+    private final int hashCount;
+
+    /**
+     * 根据预计元素个数和期望误判率计算位数组大小和哈希函数个数，位数组大小不会超过 maxBits
+     *
+     * @param expectedInsertions 预计元素个数
+     * @param falsePositiveRate  期望误判率
+     * @param maxBits            位数组最大位数（用来限制内存占用）
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate, long maxBits) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions必须大于0");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate必须在0到1之间");
+        }
+        // m = -n * ln(p) / (ln2)^2
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        long m = Math.max(64L, Math.min(optimalBits, maxBits));
+        // 向上取整为64的倍数
+        int words = (int) Math.min(Integer.MAX_VALUE, (m + 63) >>> 6);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words << 6;
+        // k = m / n * ln2
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * 添加元素
+     *
+     * @param id id
+     */
+    public void put(long id) {
+        long hash1 = mix(id);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashCount; i++) {
+            long index = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitSize;
+            setBit(index);
+        }
+    }
+
+    /**
+     * 判断元素是否可能存在
+     *
+     * @param id id
+     * @return false 表示一定不存在；true 表示可能存在
+     */
+    public boolean mightContain(long id) {
+        long hash1 = mix(id);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashCount; i++) {
+            long index = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitSize;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long old;
+        do {
+            old = bits.get(word);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(word, old, old | mask));
+    }
+
+    /**
+     * MurmurHash3 的 fmix64，把相邻的id打散到整个位数组上
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public long bitSize() {
+        return bitSize;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * 位数组占用的内存（字节）
+     */
+    public long memoryBytes() {
+        return bitSize >>> 3;
+    }
+
+    /**
+     * 插入 n 个元素后的理论误判率：(1 - e^(-k*n/m))^k
+     *
+     * @param insertions 已插入的元素个数
+     */
+    public double expectedFalsePositiveRate(long insertions) {
+        return Math.pow(1 - Math.exp(-(double) hashCount * insertions / bitSize), hashCount);
+    }
+}
@@ -1,22 +1,42 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.hmdp.config.CacheProperties;
 import com.hmdp.entity.RedisData;
+import com.hmdp.utils.codec.BinaryCacheCodec;
+import com.hmdp.utils.codec.CacheCodec;
+import com.hmdp.utils.codec.CompressingCacheCodec;
+import com.hmdp.utils.codec.JsonCacheCodec;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
 import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+import static com.hmdp.utils.RedisConstants.MUTEX_MAX_RETRIES;
+import static com.hmdp.utils.RedisConstants.MUTEX_RETRY_INTERVAL_MILLIS;
 
 /**
  * CacheClient
@@ -32,16 +52,120 @@ public class CacheClient {
     private StringRedisTemplate stringRedisTemplate;
 
     /**
-     * 定义一个固定大小的线程池用于缓存重建任务
-     * 选择固定大小的线程池可以确保并发执行任务的数目被控制，
-     * 这样可以防止过多的并发任务耗尽系统资源
-     * 线程池的大小设定为10，表示可以同时执行10个任务，
-     * 超过的任务将在队列中等待执行
+     * 缓存数据统一以字节数组读写，具体格式由 {@link #codec} 决定
      */
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Resource
+    private RedisTemplate<String, byte[]> byteRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private CacheProperties cacheProperties;
+
+    @Resource
+    private IdBloomFilter idBloomFilter;
+
+    /**
+     * queryWithPassThrough 未命中时的请求合并
+     */
+    private final SingleFlight passThroughFlight = new SingleFlight();
+
+    /**
+     * queryWithEarlyRefresh 未命中时的请求合并
+     */
+    private final SingleFlight earlyRefreshFlight = new SingleFlight();
+
+    /**
+     * 缓存序列化方式
+     */
+    private CompressingCacheCodec codec;
 
     /**
-     * 将任意Java对象序列化为json并存储在string类型的key中，并且可以设置TTL过期时间。
+     * 本地一级缓存，未开启时为null
+     */
+    private LocalCache localCache;
+
+    /**
+     * 缓存重建线程池，队列有界并按key去重
+     */
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+
+    /**
+     * 开启本地缓存时，订阅失效频道。
+     * 任何一个节点删除缓存都会发布失效消息，所有节点（包括自己）收到后删除本地缓存，保证多节点间的一致性
+     */
+    @PostConstruct
+    private void init() {
+        // 二进制格式也能读取JSON格式的数据，因此切换配置后旧数据仍然可用
+        CacheCodec delegate = "binary".equalsIgnoreCase(cacheProperties.getCodec()) ? new BinaryCacheCodec() : new JsonCacheCodec();
+        // 压缩层总是存在，关闭压缩时只是不再压缩新数据，已经压缩过的数据仍然能读取
+        CacheProperties.Compression compression = cacheProperties.getCompression();
+        codec = new CompressingCacheCodec(delegate,
+                compression.isEnabled() ? (int) compression.getThreshold().toBytes() : 0);
+        CacheProperties.Local local = cacheProperties.getLocal();
+        if (!local.isEnabled()) {
+            return;
+        }
+        localCache = new LocalCache(local.getMaximumSize(), local.getTtl().toMillis());
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 删除缓存，并通知所有节点删除对应的本地缓存
+     *
+     * @param key 键
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        if (localCache != null) {
+            localCache.invalidate(key);
+            stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+        }
+    }
+
+    /**
+     * queryWithPassThrough 请求合并的统计信息，coalesced 即为节省下来的数据库查询次数
+     */
+    public Map<String, Object> passThroughFlightStats() {
+        return passThroughFlight.stats();
+    }
+
+    /**
+     * queryWithEarlyRefresh 请求合并的统计信息
+     */
+    public Map<String, Object> earlyRefreshFlightStats() {
+        return earlyRefreshFlight.stats();
+    }
+
+    /**
+     * 缓存重建线程池的统计信息
+     */
+    public Map<String, Object> rebuildStats() {
+        return cacheRebuildExecutor.stats();
+    }
+
+    /**
+     * 压缩的统计信息（压缩率、平均压缩/解压耗时）
+     */
+    public Map<String, Object> compressionStats() {
+        return codec.stats();
+    }
+
+    /**
+     * 本地缓存统计信息
+     *
+     * @return 未开启本地缓存时返回空Map
+     */
+    public Map<String, Object> localCacheStats() {
+        return localCache == null ? Collections.emptyMap() : localCache.stats();
+    }
+
+    /**
+     * 将任意Java对象按配置的编解码器（hmdp.cache.codec，超过阈值时压缩）序列化后存储在string类型的key中，并且可以设置TTL过期时间。
      *
      * @param key   键
      * @param value 值
@@ -49,11 +173,11 @@ public class CacheClient {
      * @param unit  时间单位
      */
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        byteRedisTemplate.opsForValue().set(key, encode(value), time, unit);
     }
 
     /**
-     * 将任意Java对象序列化为json并存储在string类型的key中，并且可以设置逻辑过期时间，用于处理缓存击穿问题。
+     * 将任意Java对象连同逻辑过期时间一起按配置的编解码器序列化后存储在string类型的key中，用于处理缓存击穿问题。
      *
      * @param key   键
      * @param value 值
@@ -61,12 +185,68 @@ public class CacheClient {
      * @param unit  时间单位
      */
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        setWithLogicalExpire(key, value, time, unit, null);
+    }
+
+    /**
+     * 写入带逻辑过期时间的缓存，同时记录这次重建的耗时，供 {@link #queryWithEarlyRefresh} 计算提前刷新的概率。
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  过期时间
+     * @param unit  时间单位
+     * @param delta 重建耗时（毫秒），未知时为null
+     */
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, Long delta) {
         // 设置逻辑过期时间
         RedisData redisData = new RedisData();
         redisData.setData(value);
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        redisData.setDelta(delta);
         // 写入Redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        byteRedisTemplate.opsForValue().set(key, codec.encodeWithExpire(redisData));
+    }
+
+    /**
+     * 批量写入带逻辑过期时间的缓存，所有key用一次管道写入，用于批量查询回写和缓存预热。
+     *
+     * @param values 键 -> 值
+     * @param time   过期时间
+     * @param unit   时间单位
+     */
+    public void setBatchWithLogicalExpire(Map<String, ?> values, Long time, TimeUnit unit) {
+        setBatchWithLogicalExpire(values, time, unit, null, 0);
+    }
+
+    /**
+     * 批量写入带逻辑过期时间的缓存，每个key的过期时间加上一个随机的偏移，避免同一批key同时过期；
+     * 同时记录重建耗时，过期前由 {@link #queryWithEarlyRefresh} 按概率分散地提前刷新。
+     *
+     * @param values       键 -> 值
+     * @param time         过期时间
+     * @param unit         时间单位
+     * @param delta        重建耗时（毫秒），未知时为null
+     * @param jitterMillis 过期时间的最大随机偏移（毫秒），0 表示不偏移
+     */
+    public void setBatchWithLogicalExpire(Map<String, ?> values, Long time, TimeUnit unit, Long delta, long jitterMillis) {
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        Map<String, byte[]> encoded = new HashMap<>(values.size() * 2);
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            RedisData redisData = new RedisData();
+            redisData.setData(entry.getValue());
+            redisData.setExpireTime(jitterMillis <= 0 ? expireTime
+                    : expireTime.plusNanos(TimeUnit.MILLISECONDS.toNanos(ThreadLocalRandom.current().nextLong(jitterMillis + 1))));
+            redisData.setDelta(delta);
+            encoded.put(entry.getKey(), codec.encodeWithExpire(redisData));
+        }
+        multiSet(encoded, 0);
+    }
+
+    /**
+     * 序列化缓存值，空字符串表示缓存的空值，写入空字节数组
+     */
+    private byte[] encode(Object value) {
+        return "".equals(value) ? new byte[0] : codec.encode(value);
     }
 
     /**
@@ -82,32 +262,149 @@ public class CacheClient {
      * @return {@link R }
      */
     public <R, T> R queryWithPassThrough(String keyPrefix, T id, Class<R> type, Function<T, R> dbFallback, Long time, TimeUnit unit) {
-        // 1. 从 redis 查询缓存
+        // 0. 布隆过滤器判断id一定不存在时直接返回，不再查询Redis和数据库
+        if (!idBloomFilter.mightContain(keyPrefix, id)) {
+            return null;
+        }
         String key = keyPrefix + id;
-        String json = stringRedisTemplate.opsForValue().get(key);
-        // 2. 命中真实数据，返回实体类信息
-        if (StrUtil.isNotBlank(json)) {
-            return JSONUtil.toBean(json, type);
+        // 0. 先查本地缓存
+        if (localCache != null) {
+            Object cached = localCache.get(key);
+            if (cached == LocalCache.NULL_VALUE) {
+                return null;
+            }
+            if (type.isInstance(cached)) {
+                return type.cast(cached);
+            }
+        }
+        // 1. 从 redis 查询缓存
+        byte[] bytes = byteRedisTemplate.opsForValue().get(key);
+        // 2. 命中真实数据，返回实体类信息（无法识别的数据当作未命中，重新加载后覆盖）
+        if (bytes != null && bytes.length > 0) {
+            R r = codec.decode(bytes, type);
+            if (r != null) {
+                putLocal(key, r, unit.toMillis(time));
+                return r;
+            }
         }
         // 3. 命中空值，返回空值
-        if ("".equals(json)) {
+        if (bytes != null && bytes.length == 0) {
+            putLocal(key, LocalCache.NULL_VALUE, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL));
+            return null;
+        }
+        // 4. 未命中，则查询数据库。同一个key并发未命中时只有一个线程查库和写Redis，其余线程共享结果
+        return passThroughFlight.execute(key, () -> loadWithPassThrough(key, id, type, dbFallback, time, unit));
+    }
+
+    /**
+     * 缓存未命中时查询数据库并写入缓存，由 {@link #passThroughFlight} 保证同一个key同时只有一个线程执行
+     */
+    private <R, T> R loadWithPassThrough(String key, T id, Class<R> type, Function<T, R> dbFallback, Long time, TimeUnit unit) {
+        // double check 有可能在等待的这段时间别的线程已经写好缓存了
+        byte[] bytes = byteRedisTemplate.opsForValue().get(key);
+        if (bytes != null && bytes.length == 0) {
             return null;
         }
-        // 4. 未命中，则查询数据库
+        if (bytes != null) {
+            R cached = codec.decode(bytes, type);
+            if (cached != null) {
+                return cached;
+            }
+        }
         R r = dbFallback.apply(id);
         // 5. 若不存在，则返回空值
         if (r == null) {
             // 将空值写入 Redis，并设置过期时间
             this.set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            putLocal(key, LocalCache.NULL_VALUE, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL));
             // 返回空值
             return null;
         }
         // 6. 若存在，则将实体类数据写入 Redis，并设置过期时间
         this.set(key, r, time, unit);
+        putLocal(key, r, unit.toMillis(time));
         // 7. 返回实体类信息
         return r;
     }
 
+    /**
+     * 根据指定的key查询缓存，未命中时利用互斥锁解决缓存击穿问题：
+     * 抢到锁的线程查询数据库并写入缓存，其余线程等待一会儿后重新查询缓存。
+     *
+     * @param keyPrefix     key前缀
+     * @param id            id
+     * @param type          实体类类型
+     * @param lockKeyPrefix lock前缀
+     * @param dbFallback    数据库查询方法
+     * @param time          过期时间
+     * @param unit          时间单位
+     * @return {@link R }
+     */
+    public <R, T> R queryWithMutex(String keyPrefix, T id, Class<R> type, String lockKeyPrefix, Function<T, R> dbFallback, Long time, TimeUnit unit) {
+        // 0. 布隆过滤器判断id一定不存在时直接返回
+        if (!idBloomFilter.mightContain(keyPrefix, id)) {
+            return null;
+        }
+        String key = keyPrefix + id;
+        // 0. 先查本地缓存
+        if (localCache != null) {
+            Object cached = localCache.get(key);
+            if (cached == LocalCache.NULL_VALUE) {
+                return null;
+            }
+            if (type.isInstance(cached)) {
+                return type.cast(cached);
+            }
+        }
+        String lockKey = lockKeyPrefix + id;
+        for (int retries = 0; ; retries++) {
+            // 1. 从 redis 查询缓存，命中空值直接返回
+            byte[] bytes = byteRedisTemplate.opsForValue().get(key);
+            if (bytes != null && bytes.length == 0) {
+                putLocal(key, LocalCache.NULL_VALUE, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL));
+                return null;
+            }
+            // 2. 命中真实数据，返回实体类信息
+            R cached = bytes == null ? null : codec.decode(bytes, type);
+            if (cached != null) {
+                putLocal(key, cached, unit.toMillis(time));
+                return cached;
+            }
+            // 3. 未命中，获取互斥锁，成功的线程查询数据库并写入缓存
+            if (tryLock(lockKey)) {
+                try {
+                    // double check 有可能在等锁的这段时间别的线程已经写好缓存了，回到循环开头读取
+                    byte[] latest = byteRedisTemplate.opsForValue().get(key);
+                    if (latest != null && (latest.length == 0 || codec.decode(latest, type) != null)) {
+                        continue;
+                    }
+                    R r = dbFallback.apply(id);
+                    if (r == null) {
+                        this.set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                        putLocal(key, LocalCache.NULL_VALUE, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL));
+                        return null;
+                    }
+                    this.set(key, r, time, unit);
+                    putLocal(key, r, unit.toMillis(time));
+                    return r;
+                } finally {
+                    unlock(lockKey);
+                }
+            }
+            // 4. 等待太久（持有锁的线程可能很慢或者已经挂了），直接查询数据库，不写缓存
+            if (retries >= MUTEX_MAX_RETRIES) {
+                return dbFallback.apply(id);
+            }
+            // 5. 获取锁失败，休眠一会儿再重新查询缓存
+            try {
+                Thread.sleep(MUTEX_RETRY_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return dbFallback.apply(id);
+            }
+        }
+    }
+
     /**
      * 根据指定的key查询缓存，如果缓存已过期，则进行缓存重建。
      * 并反序列化为指定实体类型，利用逻辑过期解决缓存击穿问题。
@@ -122,24 +419,49 @@ public class CacheClient {
      * @return {@link R }
      */
     public <R, T> R queryWithLogicalExpire(String keyPrefix, T id, Class<R> type, String lockKeyPrefix, Function<T, R> dbFallBack, Long time, TimeUnit unit) {
+        // 0. 布隆过滤器判断id一定不存在时直接返回
+        if (!idBloomFilter.mightContain(keyPrefix, id)) {
+            return null;
+        }
         String key = keyPrefix + id;
+        // 0. 先查本地缓存，本地缓存中保存的是已经反序列化好的数据，逻辑过期后再回源Redis判断是否需要重建
+        if (localCache != null) {
+            Object cached = localCache.get(key);
+            if (cached instanceof RedisData) {
+                RedisData localData = (RedisData) cached;
+                if (type.isInstance(localData.getData()) && localData.getExpireTime().isAfter(LocalDateTime.now())) {
+                    return type.cast(localData.getData());
+                }
+            }
+        }
         // 1. 从redis查询实体类缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = byteRedisTemplate.opsForValue().get(key);
         // 2. 判断是否命中
-        if (StrUtil.isBlank(json)) {
+        if (bytes == null || bytes.length == 0) {
             // 3. 未命中，直接返回空值
             return null;
         }
-        // 4. 命中，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
+        // 4. 命中，需要先把数据反序列化为对象
+        RedisData redisData = codec.decodeWithExpire(bytes, type);
+        // 无法识别的数据按已过期处理，重建后覆盖
+        R r = redisData == null ? null : type.cast(redisData.getData());
+        LocalDateTime expireTime = redisData == null ? LocalDateTime.MIN : redisData.getExpireTime();
         // 5. 判断缓存是否过期
         if (expireTime.isAfter(LocalDateTime.now())) {
-            // 6. 未过期，直接返回实体类信息
+            // 6. 未过期，放入本地缓存，直接返回实体类信息
+            if (localCache != null) {
+                RedisData localData = new RedisData();
+                localData.setData(r);
+                localData.setExpireTime(expireTime);
+                localCache.put(key, localData);
+            }
             return r;
         }
         // 7. 已过期，需要缓存重建
+        // 7.1 本节点已经在重建这个key了，不用再去抢锁，直接返回旧数据
+        if (cacheRebuildExecutor.isPending(key)) {
+            return r;
+        }
         // 8. 缓存重建
         // 8.1 获取互斥锁
         String lockKey = lockKeyPrefix + id;
@@ -147,36 +469,357 @@ public class CacheClient {
         // 8.2 判断是否获取锁成功
         if (isLock) {
             // double check 获取锁成功，再次检查redis缓存是否过期（有可能在这段时间别的线程已经重建缓存了）
-            json = stringRedisTemplate.opsForValue().get(key);
-            if (StrUtil.isBlank(json)) {
+            bytes = byteRedisTemplate.opsForValue().get(key);
+            if (bytes == null || bytes.length == 0) {
+                unlock(lockKey);
                 return null;
             }
-            redisData = JSONUtil.toBean(json, RedisData.class);
-            expireTime = redisData.getExpireTime();
-            if (expireTime.isAfter(LocalDateTime.now())) {
-                // 缓存未过期，直接返回店铺信息
-                r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-                return r;
+            redisData = codec.decodeWithExpire(bytes, type);
+            if (redisData != null && redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                // 缓存未过期，释放锁，直接返回店铺信息
+                unlock(lockKey);
+                return type.cast(redisData.getData());
             }
             // 缓存已过期，重建缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 查数据库
-                    R r1 = dbFallBack.apply(id);
-                    // 写入Redis并设置逻辑过期时间
-                    this.setWithLogicalExpire(key, r1, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    // 释放锁
-                    unlock(lockKey);
+            rebuildAsync(key, lockKey, id, dbFallBack, time, unit);
+        }
+        // 8. 返回过期的实体类信息
+        return r;
+    }
+
+    /**
+     * 根据指定的key查询缓存，在逻辑过期的基础上提前刷新（XFetch 算法）。
+     * 越接近过期时间、上一次重建耗时越长，提前重建的概率越大，这样热点key的重建会被分散开，
+     * 不会在过期的那一刻集中发生；缓存不存在时同步查询数据库并写入（同一个key只查一次）。
+     *
+     * @param keyPrefix     key前缀
+     * @param id            id
+     * @param type          类型
+     * @param lockKeyPrefix lock前缀
+     * @param dbFallBack    数据库查询方法
+     * @param time          过期时间
+     * @param unit          时间单位
+     * @return {@link R }
+     */
+    public <R, T> R queryWithEarlyRefresh(String keyPrefix, T id, Class<R> type, String lockKeyPrefix, Function<T, R> dbFallBack, Long time, TimeUnit unit) {
+        // 0. 布隆过滤器判断id一定不存在时直接返回
+        if (!idBloomFilter.mightContain(keyPrefix, id)) {
+            return null;
+        }
+        String key = keyPrefix + id;
+        // 0. 先查本地缓存，需要刷新时再回源Redis
+        if (localCache != null) {
+            Object cached = localCache.get(key);
+            if (cached instanceof RedisData) {
+                RedisData localData = (RedisData) cached;
+                if (type.isInstance(localData.getData()) && !shouldRefresh(localData)) {
+                    return type.cast(localData.getData());
+                }
+            }
+        }
+        // 1. 从redis查询实体类缓存
+        byte[] bytes = byteRedisTemplate.opsForValue().get(key);
+        RedisData redisData = bytes == null || bytes.length == 0 ? null : codec.decodeWithExpire(bytes, type);
+        // 2. 未命中（或者数据无法识别），同步查询数据库并写入缓存
+        if (redisData == null) {
+            return earlyRefreshFlight.execute(key, () -> {
+                long begin = System.currentTimeMillis();
+                R r = dbFallBack.apply(id);
+                if (r != null) {
+                    this.setWithLogicalExpire(key, r, time, unit, System.currentTimeMillis() - begin);
                 }
+                return r;
             });
         }
-        // 8. 返回过期的实体类信息
+        // 3. 命中
+        R r = type.cast(redisData.getData());
+        // 4. 不需要刷新，放入本地缓存后返回
+        if (!shouldRefresh(redisData)) {
+            if (localCache != null) {
+                RedisData localData = new RedisData();
+                localData.setData(r);
+                localData.setExpireTime(redisData.getExpireTime());
+                localData.setDelta(redisData.getDelta());
+                localCache.put(key, localData);
+            }
+            return r;
+        }
+        // 5. 需要刷新（已过期或者被选中提前刷新），异步重建，先返回当前数据
+        if (!cacheRebuildExecutor.isPending(key) && tryLock(lockKeyPrefix + id)) {
+            rebuildAsync(key, lockKeyPrefix + id, id, dbFallBack, time, unit);
+        }
         return r;
     }
 
+    /**
+     * XFetch：now - delta * beta * ln(random) >= expireTime 时刷新。
+     * ln(random) 为负数，所以相当于给当前时间加上一个随机的提前量，提前量的期望与上一次重建耗时 delta 成正比
+     *
+     * @param redisData 缓存数据
+     * @return 是否需要刷新
+     */
+    private boolean shouldRefresh(RedisData redisData) {
+        long expireAt = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long now = System.currentTimeMillis();
+        if (now >= expireAt) {
+            return true;
+        }
+        Long delta = redisData.getDelta();
+        if (delta == null || delta <= 0) {
+            return false;
+        }
+        double beta = cacheProperties.getEarlyRefresh().getBeta();
+        double gap = -delta * beta * Math.log(ThreadLocalRandom.current().nextDouble());
+        return now + gap >= expireAt;
+    }
+
+    /**
+     * 提交异步重建任务，调用前需要已经获取到锁，任务结束后释放锁。
+     * 会记录本次查询数据库的耗时，供提前刷新使用。
+     */
+    private <R, T> void rebuildAsync(String key, String lockKey, T id, Function<T, R> dbFallBack, Long time, TimeUnit unit) {
+        // 异常由线程池记录
+        boolean submitted = cacheRebuildExecutor.submit(key, () -> {
+            try {
+                long begin = System.currentTimeMillis();
+                // 查数据库
+                R r1 = dbFallBack.apply(id);
+                // 写入Redis并设置逻辑过期时间
+                this.setWithLogicalExpire(key, r1, time, unit, System.currentTimeMillis() - begin);
+            } finally {
+                // 释放锁
+                unlock(lockKey);
+            }
+        });
+        if (!submitted) {
+            // 线程池已满或者已经在重建，本次不重建，释放锁让之后的请求再尝试
+            unlock(lockKey);
+        }
+    }
+
+    /**
+     * 批量查询缓存，利用缓存空值的方式解决缓存穿透问题。
+     * 一次 MGET 查询所有key，未命中的id一次性交给数据库查询（IN 查询），查询结果再用一次管道写回Redis，
+     * 这样无论多少个id，最多只需要三次网络往返。
+     *
+     * @param keyPrefix  key前缀
+     * @param ids        id集合
+     * @param type       实体类类型
+     * @param dbFallback 数据库批量查询方法
+     * @param idGetter   从实体类中获取id的方法，用于和查询结果对应
+     * @param time       过期时间
+     * @param unit       时间单位
+     * @return 按ids的顺序返回查询到的实体类，不存在的id会被跳过
+     */
+    public <R, T> List<R> queryBatchWithPassThrough(String keyPrefix, Collection<T> ids, Class<R> type,
+                                                    Function<Collection<T>, List<R>> dbFallback, Function<R, T> idGetter,
+                                                    Long time, TimeUnit unit) {
+        Map<T, R> found = new HashMap<>();
+        // 1. 去重，并用布隆过滤器和本地缓存过滤
+        List<T> remaining = new ArrayList<>();
+        for (T id : new LinkedHashSet<>(ids)) {
+            if (!idBloomFilter.mightContain(keyPrefix, id)) {
+                continue;
+            }
+            Object cached = localCache == null ? null : localCache.get(keyPrefix + id);
+            if (type.isInstance(cached)) {
+                found.put(id, type.cast(cached));
+            } else if (cached != LocalCache.NULL_VALUE) {
+                remaining.add(id);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            // 2. 一次 MGET 查询Redis
+            List<byte[]> values = multiGet(keyPrefix, remaining);
+            List<T> missed = new ArrayList<>();
+            for (int i = 0; i < remaining.size(); i++) {
+                T id = remaining.get(i);
+                byte[] bytes = values.get(i);
+                R r = bytes == null || bytes.length == 0 ? null : codec.decode(bytes, type);
+                if (r != null) {
+                    putLocal(keyPrefix + id, r, unit.toMillis(time));
+                    found.put(id, r);
+                } else if (bytes != null && bytes.length == 0) {
+                    putLocal(keyPrefix + id, LocalCache.NULL_VALUE, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL));
+                } else {
+                    missed.add(id);
+                }
+            }
+            // 3. 未命中的id一次性查询数据库
+            if (!missed.isEmpty()) {
+                Map<String, byte[]> loadedValues = new HashMap<>();
+                Map<String, byte[]> nullValues = new HashMap<>();
+                Map<T, R> loaded = loadBatch(missed, dbFallback, idGetter);
+                for (T id : missed) {
+                    String key = keyPrefix + id;
+                    R r = loaded.get(id);
+                    if (r == null) {
+                        nullValues.put(key, new byte[0]);
+                        putLocal(key, LocalCache.NULL_VALUE, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL));
+                    } else {
+                        loadedValues.put(key, codec.encode(r));
+                        putLocal(key, r, unit.toMillis(time));
+                        found.put(id, r);
+                    }
+                }
+                // 4. 用一次管道写回Redis
+                multiSet(loadedValues, unit.toMillis(time));
+                multiSet(nullValues, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL));
+            }
+        }
+        return orderBy(ids, found);
+    }
+
+    /**
+     * 批量查询缓存，利用逻辑过期解决缓存击穿问题。
+     * 与 {@link #queryWithLogicalExpire} 不同的是，缓存中不存在的id会一次性查询数据库并以逻辑过期的方式写回Redis。
+     *
+     * @param keyPrefix     key前缀
+     * @param ids           id集合
+     * @param type          实体类类型
+     * @param lockKeyPrefix lock前缀
+     * @param dbFallback    数据库批量查询方法
+     * @param idGetter      从实体类中获取id的方法
+     * @param time          过期时间
+     * @param unit          时间单位
+     * @return 按ids的顺序返回查询到的实体类，不存在的id会被跳过
+     */
+    public <R, T> List<R> queryBatchWithLogicalExpire(String keyPrefix, Collection<T> ids, Class<R> type, String lockKeyPrefix,
+                                                      Function<Collection<T>, List<R>> dbFallback, Function<R, T> idGetter,
+                                                      Long time, TimeUnit unit) {
+        Map<T, R> found = new HashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+        // 1. 去重，并用布隆过滤器和本地缓存过滤
+        List<T> remaining = new ArrayList<>();
+        for (T id : new LinkedHashSet<>(ids)) {
+            if (!idBloomFilter.mightContain(keyPrefix, id)) {
+                continue;
+            }
+            Object cached = localCache == null ? null : localCache.get(keyPrefix + id);
+            if (cached instanceof RedisData && type.isInstance(((RedisData) cached).getData())
+                    && ((RedisData) cached).getExpireTime().isAfter(now)) {
+                found.put(id, type.cast(((RedisData) cached).getData()));
+            } else {
+                remaining.add(id);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return orderBy(ids, found);
+        }
+        // 2. 一次 MGET 查询Redis
+        List<byte[]> values = multiGet(keyPrefix, remaining);
+        List<T> missed = new ArrayList<>();
+        for (int i = 0; i < remaining.size(); i++) {
+            T id = remaining.get(i);
+            byte[] bytes = values.get(i);
+            RedisData redisData = bytes == null || bytes.length == 0 ? null : codec.decodeWithExpire(bytes, type);
+            if (redisData == null) {
+                missed.add(id);
+                continue;
+            }
+            String key = keyPrefix + id;
+            R r = type.cast(redisData.getData());
+            found.put(id, r);
+            if (redisData.getExpireTime().isAfter(now)) {
+                if (localCache != null) {
+                    RedisData localData = new RedisData();
+                    localData.setData(r);
+                    localData.setExpireTime(redisData.getExpireTime());
+                    localCache.put(key, localData);
+                }
+            } else if (!cacheRebuildExecutor.isPending(key) && tryLock(lockKeyPrefix + id)) {
+                // 已过期，单独异步重建这一个key，先返回旧数据
+                rebuildAsync(key, lockKeyPrefix + id, id,
+                        (T i1) -> loadBatch(Collections.singletonList(i1), dbFallback, idGetter).get(i1), time, unit);
+            }
+        }
+        // 3. 未命中的id一次性查询数据库，并用一次管道以逻辑过期的方式写回Redis
+        if (!missed.isEmpty()) {
+            Map<T, R> loaded = loadBatch(missed, dbFallback, idGetter);
+            Map<String, Object> loadedValues = new HashMap<>();
+            for (Map.Entry<T, R> entry : loaded.entrySet()) {
+                loadedValues.put(keyPrefix + entry.getKey(), entry.getValue());
+                found.put(entry.getKey(), entry.getValue());
+            }
+            setBatchWithLogicalExpire(loadedValues, time, unit);
+        }
+        return orderBy(ids, found);
+    }
+
+    /**
+     * 一次 MGET 查询多个key
+     */
+    private <T> List<byte[]> multiGet(String keyPrefix, List<T> ids) {
+        List<String> keys = new ArrayList<>(ids.size());
+        for (T id : ids) {
+            keys.add(keyPrefix + id);
+        }
+        List<byte[]> values = byteRedisTemplate.opsForValue().multiGet(keys);
+        // 在管道或事务中调用时会返回null，这里统一处理成全部未命中
+        return values == null ? Collections.nCopies(keys.size(), null) : values;
+    }
+
+    /**
+     * 用一次管道写入多个key
+     *
+     * @param values    key -> value
+     * @param ttlMillis 过期时间（毫秒），小于等于0表示不过期
+     */
+    private void multiSet(Map<String, byte[]> values, long ttlMillis) {
+        if (values.isEmpty()) {
+            return;
+        }
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                if (ttlMillis > 0) {
+                    connection.stringCommands().set(key, entry.getValue(), Expiration.milliseconds(ttlMillis), RedisStringCommands.SetOption.upsert());
+                } else {
+                    connection.stringCommands().set(key, entry.getValue());
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 批量查询数据库，并按id整理成Map
+     */
+    private <R, T> Map<T, R> loadBatch(Collection<T> ids, Function<Collection<T>, List<R>> dbFallback, Function<R, T> idGetter) {
+        List<R> list = dbFallback.apply(ids);
+        Map<T, R> map = new HashMap<>();
+        if (list != null) {
+            for (R r : list) {
+                map.put(idGetter.apply(r), r);
+            }
+        }
+        return map;
+    }
+
+    private <R, T> List<R> orderBy(Collection<T> ids, Map<T, R> found) {
+        List<R> result = new ArrayList<>(found.size());
+        for (T id : new LinkedHashSet<>(ids)) {
+            R r = found.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 写入本地缓存（未开启本地缓存时什么都不做）
+     *
+     * @param key       键
+     * @param value     值
+     * @param ttlMillis Redis中的过期时间，本地缓存的存活时间不会超过它
+     */
+    private void putLocal(String key, Object value, long ttlMillis) {
+        if (localCache != null) {
+            localCache.put(key, value, ttlMillis);
+        }
+    }
+
     /**
      * 获取锁。成功插入key的线程我们认为它就是获得到锁的线程。
      *
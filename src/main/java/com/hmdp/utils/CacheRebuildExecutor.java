@@ -0,0 +1,139 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CacheRebuildExecutor
+ *
+ * @author sundae
+ * @date 2024/11/23
+ * @description 缓存重建线程池：队列有界，同一个key排队中时不会重复提交，任务异常会被记录而不是被吞掉
+ */
+@Component
+@Slf4j
+public class CacheRebuildExecutor {
+    @Resource
+    private CacheProperties cacheProperties;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * 已提交但还没执行完的key，用于去重
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final LongAccumulator maxLatencyMillis = new LongAccumulator(Math::max, 0);
+
+    @PostConstruct
+    private void init() {
+        CacheProperties.Rebuild rebuild = cacheProperties.getRebuild();
+        AtomicInteger threadNumber = new AtomicInteger();
+        // 队列满时直接拒绝（AbortPolicy），由调用方返回旧数据，不会无限堆积任务
+        executor = new ThreadPoolExecutor(rebuild.getThreads(), rebuild.getThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(rebuild.getQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "cache-rebuild-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 判断这个key是否已经在排队或者正在重建
+     *
+     * @param key 缓存key
+     */
+    public boolean isPending(String key) {
+        return pendingKeys.contains(key);
+    }
+
+    /**
+     * 提交重建任务
+     *
+     * @param key  缓存key，用于去重
+     * @param task 重建任务
+     * @return 提交成功返回true；key已经在排队或者队列已满返回false，调用方应该返回旧数据
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pendingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        try {
+            executor.execute(() -> run(key, task));
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendingKeys.remove(key);
+            rejected.increment();
+            log.warn("缓存重建队列已满，放弃重建：{}", key);
+            return false;
+        }
+    }
+
+    private void run(String key, Runnable task) {
+        long begin = System.currentTimeMillis();
+        try {
+            task.run();
+            succeeded.increment();
+        } catch (Throwable e) {
+            failed.increment();
+            log.error("缓存重建失败：{}", key, e);
+        } finally {
+            pendingKeys.remove(key);
+            long latency = System.currentTimeMillis() - begin;
+            totalLatencyMillis.add(latency);
+            maxLatencyMillis.accumulate(latency);
+        }
+    }
+
+    /**
+     * 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long finished = succeeded.sum() + failed.sum();
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueCapacity", cacheProperties.getRebuild().getQueueCapacity());
+        stats.put("active", executor.getActiveCount());
+        stats.put("pendingKeys", pendingKeys.size());
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("succeeded", succeeded.sum());
+        stats.put("failed", failed.sum());
+        stats.put("avgLatencyMillis", finished == 0 ? 0 : totalLatencyMillis.sum() / finished);
+        stats.put("maxLatencyMillis", maxLatencyMillis.get());
+        return stats;
+    }
+}
@@ -0,0 +1,227 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+import static com.hmdp.utils.RedisConstants.CACHE_WARM_UP_KEY;
+
+/**
+ * CacheWarmer
+ *
+ * @author sundae
+ * @date 2024/11/28
+ * @description 商铺缓存预热：按id分页读取 tb_shop，以逻辑过期的方式用管道批量写入Redis。
+ * 启动时在后台执行，不阻塞服务启动；Redis故障切换后也可以通过 /monitor/cache/warm-up 手动触发。
+ * <p>
+ * 每个商铺的逻辑过期时间加上随机偏移并记录重建耗时，预热的key不会同时过期，而是由提前刷新分散地重建；
+ * 多个节点同时启动时通过Redis中的标记只由一个节点预热。
+ */
+@Component
+@Slf4j
+public class CacheWarmer implements ApplicationRunner {
+    /**
+     * 两次进度日志之间的最小间隔（毫秒）
+     */
+    private static final long PROGRESS_LOG_INTERVAL_MILLIS = 5000L;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheProperties cacheProperties;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 进程号@主机名，记录在预热标记中
+     */
+    private final String node = ManagementFactory.getRuntimeMXBean().getName();
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile long total;
+    private final LongAdder warmed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile long startTime;
+    private volatile long finishTime;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!cacheProperties.getWarmUp().isEnabled()) {
+            return;
+        }
+        try {
+            // 其他节点最近已经预热过（或者正在预热）时跳过
+            Boolean claimed = stringRedisTemplate.opsForValue().setIfAbsent(CACHE_WARM_UP_KEY, node,
+                    cacheProperties.getWarmUp().getMinInterval());
+            if (!Boolean.TRUE.equals(claimed)) {
+                log.info("节点{}最近已经预热过商铺缓存，跳过预热", stringRedisTemplate.opsForValue().get(CACHE_WARM_UP_KEY));
+                return;
+            }
+        } catch (Exception e) {
+            log.error("检查缓存预热标记失败，跳过预热", e);
+            return;
+        }
+        start();
+    }
+
+    /**
+     * 在后台开始预热（手动触发时不检查其他节点是否预热过）
+     *
+     * @return 已经在预热中返回false
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                // 预热期间启动的节点也会跳过
+                stringRedisTemplate.opsForValue().set(CACHE_WARM_UP_KEY, node, cacheProperties.getWarmUp().getMinInterval());
+                warmUp();
+            } catch (Exception e) {
+                log.error("缓存预热失败", e);
+                // 删除标记，之后启动的节点可以重新预热
+                try {
+                    stringRedisTemplate.delete(CACHE_WARM_UP_KEY);
+                } catch (Exception ex) {
+                    log.error("删除缓存预热标记失败", ex);
+                }
+            } finally {
+                finishTime = System.currentTimeMillis();
+                running.set(false);
+            }
+        }, "cache-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private void warmUp() throws InterruptedException {
+        CacheProperties.WarmUp warmUp = cacheProperties.getWarmUp();
+        int pageSize = warmUp.getPageSize();
+        int concurrency = Math.max(warmUp.getConcurrency(), 1);
+        warmed.reset();
+        failed.reset();
+        startTime = System.currentTimeMillis();
+        finishTime = 0;
+        total = shopMapper.selectCount(null);
+        log.info("开始预热商铺缓存，共{}个，每页{}个，并发{}，限速{}/s", total, pageSize, concurrency, warmUp.getRate());
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService writers = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "cache-warm-up-writer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 同时在写的页数不超过并发数，读数据库的速度不会远远超过写Redis的速度
+        Semaphore inFlight = new Semaphore(concurrency);
+        long lastLogTime = startTime;
+        long read = 0;
+        try {
+            long lastId = 0;
+            while (true) {
+                long begin = System.currentTimeMillis();
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .gt("id", lastId).orderByAsc("id").last("limit " + pageSize));
+                // 读取这一页的耗时作为每个商铺的重建耗时（单个查询的耗时不会超过它）
+                long delta = Math.max(System.currentTimeMillis() - begin, 1L);
+                if (shops.isEmpty()) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+                read += shops.size();
+                inFlight.acquire();
+                writers.execute(() -> {
+                    try {
+                        write(shops, delta);
+                        warmed.add(shops.size());
+                    } catch (Exception e) {
+                        failed.add(shops.size());
+                        log.error("缓存预热写入失败，id范围：{} ~ {}", shops.get(0).getId(), shops.get(shops.size() - 1).getId(), e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                throttle(read, warmUp.getRate());
+                long now = System.currentTimeMillis();
+                if (now - lastLogTime >= PROGRESS_LOG_INTERVAL_MILLIS) {
+                    lastLogTime = now;
+                    log.info("商铺缓存预热进度：{}/{}", warmed.sum(), total);
+                }
+                if (shops.size() < pageSize) {
+                    break;
+                }
+            }
+        } finally {
+            writers.shutdown();
+            writers.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        log.info("商铺缓存预热完成，成功{}个，失败{}个，耗时{}ms", warmed.sum(), failed.sum(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    private void write(List<Shop> shops, long delta) {
+        Map<String, Object> values = new HashMap<>(shops.size() * 2);
+        for (Shop shop : shops) {
+            values.put(CACHE_SHOP_KEY + shop.getId(), shop);
+        }
+        cacheClient.setBatchWithLogicalExpire(values, CACHE_SHOP_TTL, TimeUnit.MINUTES, delta,
+                cacheProperties.getWarmUp().getTtlJitter().toMillis());
+    }
+
+    /**
+     * 限速：已经读取的个数超过 速率 * 已用时间 时，休眠到对应的时间点
+     */
+    private void throttle(long read, int rate) throws InterruptedException {
+        if (rate <= 0) {
+            return;
+        }
+        long expectedMillis = read * 1000 / rate;
+        long elapsedMillis = System.currentTimeMillis() - startTime;
+        if (expectedMillis > elapsedMillis) {
+            Thread.sleep(expectedMillis - elapsedMillis);
+        }
+    }
+
+    /**
+     * 预热进度
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long end = finishTime == 0 ? System.currentTimeMillis() : finishTime;
+        stats.put("running", running.get());
+        stats.put("total", total);
+        stats.put("warmed", warmed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("elapsedMillis", startTime == 0 ? 0 : end - startTime);
+        return stats;
+    }
+}
@@ -0,0 +1,252 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.VoucherMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * IdBloomFilter
+ *
+ * @author sundae
+ * @date 2024/11/22
+ * @description 商铺、优惠券id的布隆过滤器，用于在查询Redis和数据库之前拦截不存在的id，解决缓存穿透问题
+ */
+@Component
+@Slf4j
+public class IdBloomFilter {
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private VoucherMapper voucherMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private CacheProperties cacheProperties;
+
+    /**
+     * 缓存key前缀 -> 过滤器
+     */
+    private final Map<String, Filter> filters = new LinkedHashMap<>();
+
+    private ScheduledExecutorService rebuildScheduler;
+
+    @PostConstruct
+    private void init() {
+        CacheProperties.Bloom bloom = cacheProperties.getBloom();
+        if (!bloom.isEnabled()) {
+            return;
+        }
+        filters.put(CACHE_SHOP_KEY, new Filter("shop",
+                (lastId, limit) -> shopMapper.selectObjs(new QueryWrapper<Shop>()
+                        .select("id").gt("id", lastId).orderByAsc("id").last("limit " + limit))));
+        filters.put(CACHE_VOUCHER_KEY, new Filter("voucher",
+                (lastId, limit) -> voucherMapper.selectObjs(new QueryWrapper<Voucher>()
+                        .select("id").gt("id", lastId).orderByAsc("id").last("limit " + limit))));
+        // 其他节点新增的id通过频道同步过来，消息内容就是缓存key
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> onAdded(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(BLOOM_ADD_CHANNEL));
+        // 启动时异步全量构建，构建完成前过滤器不生效（全部放行）
+        rebuildScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "bloom-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = bloom.getRebuildInterval().toMillis();
+        if (interval > 0) {
+            rebuildScheduler.scheduleWithFixedDelay(this::rebuildAll, 0, interval, TimeUnit.MILLISECONDS);
+        } else {
+            rebuildScheduler.execute(this::rebuildAll);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (rebuildScheduler != null) {
+            rebuildScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 判断id是否可能存在。没有对应的过滤器、过滤器还没构建好或者id不是数字时一律返回true
+     *
+     * @param keyPrefix 缓存key前缀
+     * @param id        id
+     * @return false 表示一定不存在
+     */
+    public boolean mightContain(String keyPrefix, Object id) {
+        Filter filter = filters.get(keyPrefix);
+        if (filter == null || !(id instanceof Number)) {
+            return true;
+        }
+        BloomFilter current = filter.current;
+        if (current == null || current.mightContain(((Number) id).longValue())) {
+            return true;
+        }
+        filter.rejected.increment();
+        return false;
+    }
+
+    /**
+     * 新增id，并通知其他节点
+     *
+     * @param keyPrefix 缓存key前缀
+     * @param id        id
+     */
+    public void add(String keyPrefix, Long id) {
+        Filter filter = filters.get(keyPrefix);
+        if (filter == null || id == null) {
+            return;
+        }
+        filter.put(id);
+        stringRedisTemplate.convertAndSend(BLOOM_ADD_CHANNEL, keyPrefix + id);
+    }
+
+    private void onAdded(String key) {
+        for (Map.Entry<String, Filter> entry : filters.entrySet()) {
+            if (key.startsWith(entry.getKey())) {
+                try {
+                    entry.getValue().put(Long.parseLong(key.substring(entry.getKey().length())));
+                } catch (NumberFormatException e) {
+                    log.warn("无效的布隆过滤器新增通知：{}", key);
+                }
+                return;
+            }
+        }
+    }
+
+    private void rebuildAll() {
+        for (Filter filter : filters.values()) {
+            try {
+                filter.rebuild();
+            } catch (Exception e) {
+                // 构建失败时保留原来的过滤器，等下次重建
+                log.error("重建布隆过滤器失败：{}", filter.name, e);
+            }
+        }
+    }
+
+    /**
+     * 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Filter filter : filters.values()) {
+            stats.put(filter.name, filter.stats());
+        }
+        return stats;
+    }
+
+    private class Filter {
+        private final String name;
+
+        /**
+         * 分页读取id的方法，参数为（上一页最后一个id，每页个数）
+         */
+        private final BiFunction<Long, Integer, List<Object>> idLoader;
+
+        /**
+         * 当前生效的过滤器，构建完成前为null
+         */
+        private volatile BloomFilter current;
+
+        /**
+         * 正在构建的过滤器，构建期间新增的id要同时写进去，否则切换后会丢失
+         */
+        private volatile BloomFilter building;
+
+        private volatile long size;
+
+        private final LongAdder rejected = new LongAdder();
+
+        private Filter(String name, BiFunction<Long, Integer, List<Object>> idLoader) {
+            this.name = name;
+            this.idLoader = idLoader;
+        }
+
+        private void put(long id) {
+            BloomFilter b = building;
+            if (b != null) {
+                b.put(id);
+            }
+            BloomFilter c = current;
+            if (c != null) {
+                c.put(id);
+            }
+        }
+
+        private void rebuild() {
+            CacheProperties.Bloom bloom = cacheProperties.getBloom();
+            long begin = System.currentTimeMillis();
+            BloomFilter filter = new BloomFilter(bloom.getExpectedInsertions(), bloom.getFalsePositiveRate(),
+                    bloom.getMaxMemory().toBytes() * 8);
+            building = filter;
+            try {
+                long lastId = 0;
+                long count = 0;
+                int batchSize = bloom.getLoadBatchSize();
+                while (true) {
+                    List<Object> ids = idLoader.apply(lastId, batchSize);
+                    for (Object id : ids) {
+                        // 主键是 unsigned bigint，驱动可能返回 BigInteger
+                        lastId = ((Number) id).longValue();
+                        filter.put(lastId);
+                    }
+                    count += ids.size();
+                    if (ids.size() < batchSize) {
+                        break;
+                    }
+                }
+                current = filter;
+                size = count;
+                log.info("布隆过滤器[{}]构建完成，id个数：{}，内存：{}字节，耗时：{}ms", name, count,
+                        filter.memoryBytes(), System.currentTimeMillis() - begin);
+            } finally {
+                building = null;
+            }
+        }
+
+        private Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            BloomFilter c = current;
+            stats.put("ready", c != null);
+            stats.put("ids", size);
+            stats.put("rejected", rejected.sum());
+            if (c != null) {
+                stats.put("memoryBytes", c.memoryBytes());
+                stats.put("hashCount", c.hashCount());
+                stats.put("expectedFalsePositiveRate", c.expectedFalsePositiveRate(size));
+            }
+            return stats;
+        }
+    }
+}
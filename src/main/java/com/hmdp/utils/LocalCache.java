@@ -0,0 +1,89 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LocalCache
+ *
+ * @author sundae
+ * @date 2024/11/20
+ * @description 进程内的一级缓存，容量和存活时间都有上限，满了之后按LRU淘汰
+ */
+public class LocalCache {
+    /**
+     * 缓存空值时使用的占位对象，用来区分“没有缓存”和“缓存了空值”
+     */
+    public static final Object NULL_VALUE = new Object();
+
+    private final LRUCache<String, Object> cache;
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maximumSize 最多保存的key数量
+     * @param ttlMillis   默认存活时间（毫秒）
+     */
+    public LocalCache(int maximumSize, long ttlMillis) {
+        this.cache = CacheUtil.newLRUCache(maximumSize, ttlMillis);
+    }
+
+    /**
+     * 获取缓存，不刷新存活时间（过期时间从写入时开始计算）
+     *
+     * @param key 键
+     * @return 缓存的对象，没有缓存时返回null，缓存了空值时返回 {@link #NULL_VALUE}
+     */
+    public Object get(String key) {
+        return cache.get(key, false);
+    }
+
+    /**
+     * 写入缓存，存活时间取默认存活时间和指定时间中较小的一个
+     *
+     * @param key       键
+     * @param value     值，空值请传 {@link #NULL_VALUE}
+     * @param ttlMillis 存活时间（毫秒）
+     */
+    public void put(String key, Object value, long ttlMillis) {
+        cache.put(key, value, Math.min(ttlMillis, cache.timeout()));
+    }
+
+    /**
+     * 写入缓存，使用默认存活时间
+     */
+    public void put(String key, Object value) {
+        cache.put(key, value);
+    }
+
+    /**
+     * 使缓存失效
+     *
+     * @param key 键
+     */
+    public void invalidate(String key) {
+        cache.remove(key);
+        invalidations.increment();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", cache.size());
+        stats.put("capacity", cache.capacity());
+        stats.put("hits", cache.getHitCount());
+        stats.put("misses", cache.getMissCount());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,284 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.RateLimitProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * RateLimiter
+ *
+ * @author sundae
+ * @date 2024/12/03
+ * @description 接口限流，按 接口 + 资源（例如优惠券id） + 用户 计数，规则见 {@link RateLimitProperties}。
+ * 本地模式使用令牌桶，不访问Redis；全局模式使用Redis滑动窗口，Redis异常时放行。
+ * <p>
+ * 多级滑动窗口（例如发送验证码每个手机号每分钟1次、每天10次）见 {@link #tryAcquireWindows(Map)}，
+ * 被拒绝的请求方在本地记录到窗口有余量为止，期间的请求直接拒绝，不访问Redis。
+ */
+@Component
+@Slf4j
+public class RateLimiter {
+    private static final DefaultRedisScript<List<Object>> SLIDING_WINDOW_SCRIPT;
+    static {
+        SLIDING_WINDOW_SCRIPT = new DefaultRedisScript<>();
+        SLIDING_WINDOW_SCRIPT.setLocation(new ClassPathResource("sliding_window.lua"));
+        // 脚本返回数组，结果类型只能写 List.class
+        @SuppressWarnings("unchecked")
+        Class<List<Object>> listType = (Class<List<Object>>) (Class<?>) List.class;
+        SLIDING_WINDOW_SCRIPT.setResultType(listType);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RateLimitProperties rateLimitProperties;
+
+    /**
+     * 接口:资源:用户 -> 令牌桶
+     */
+    private LRUCache<String, TokenBucket> buckets;
+
+    /**
+     * 窗口名:请求方 -> 窗口有余量的时间（毫秒），被多级滑动窗口拒绝的请求方
+     */
+    private LocalCache blocked;
+
+    /**
+     * 滑动窗口中请求的唯一标识 = 节点标识 + 序号，同一毫秒内的多个请求不会互相覆盖
+     */
+    private final String node = RandomUtil.randomString(8);
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 接口名 -> 统计信息
+     */
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        buckets = CacheUtil.newLRUCache(rateLimitProperties.getLocalMaximumSize());
+        blocked = new LocalCache(rateLimitProperties.getLocalMaximumSize(), rateLimitProperties.getLocalBlockMax().toMillis());
+    }
+
+    /**
+     * 尝试通过限流
+     *
+     * @param endpoint 接口名
+     * @param resource 资源，可以为null
+     * @param subject  请求方（用户id或者IP）
+     * @return false 表示应当拒绝这个请求
+     */
+    public boolean tryAcquire(String endpoint, Object resource, String subject) {
+        if (!rateLimitProperties.isEnabled()) {
+            return true;
+        }
+        RateLimitProperties.Rule rule = rateLimitProperties.getEndpoints().get(endpoint);
+        if (rule == null) {
+            return true;
+        }
+        if (resource != null) {
+            rule = rule.getResources().getOrDefault(resource.toString(), rule);
+        }
+        String key = endpoint + ":" + resource + ":" + subject;
+        boolean acquired = rule.getMode() == RateLimitProperties.Mode.GLOBAL
+                ? tryAcquireGlobal(key, rule)
+                : tryAcquireLocal(key, rule);
+        Counter counter = counters.computeIfAbsent(endpoint, k -> new Counter());
+        (acquired ? counter.passed : counter.rejected).increment();
+        return acquired;
+    }
+
+    private boolean tryAcquireLocal(String key, RateLimitProperties.Rule rule) {
+        TokenBucket bucket = buckets.get(key, true);
+        if (bucket == null) {
+            synchronized (this) {
+                bucket = buckets.get(key, true);
+                if (bucket == null) {
+                    bucket = new TokenBucket(rule.capacity(), rule.getPermits(), rule.getPeriod().toNanos());
+                    // 超过补满的时间没有访问就丢弃
+                    buckets.put(key, bucket, Math.max(bucket.refillMillis(), 1000L));
+                }
+            }
+        }
+        return bucket.tryAcquire();
+    }
+
+    private boolean tryAcquireGlobal(String key, RateLimitProperties.Rule rule) {
+        try {
+            List<?> result = stringRedisTemplate.execute(SLIDING_WINDOW_SCRIPT,
+                    Collections.singletonList(RATE_LIMIT_KEY + key),
+                    String.valueOf(System.currentTimeMillis()),
+                    node + ":" + sequence.incrementAndGet(),
+                    String.valueOf(rule.getPeriod().toMillis()),
+                    String.valueOf(rule.getPermits()));
+            return result == null || ((Long) result.get(0)) == 0;
+        } catch (Exception e) {
+            // 限流只是保护手段，Redis异常时放行，由后续的Redis操作决定请求结果
+            counters.computeIfAbsent(key.substring(0, key.indexOf(':')), k -> new Counter()).errors.increment();
+            log.warn("全局限流执行失败，放行请求：{}", key, e);
+            return true;
+        }
+    }
+
+    /**
+     * 尝试通过多级滑动窗口，多个窗口（例如按手机号和按IP）在一个脚本中执行，所有窗口都有余量时才计数
+     *
+     * @param subjects 窗口名称 -> 请求方，没有配置的窗口不限流
+     * @return false 表示应当拒绝这个请求
+     */
+    public boolean tryAcquireWindows(Map<String, String> subjects) {
+        if (!rateLimitProperties.isEnabled()) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        // 每个Redis key对应的 窗口名 和 窗口名:请求方
+        List<String> names = new ArrayList<>();
+        List<String> owners = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(now));
+        args.add(node + ":" + sequence.incrementAndGet());
+        for (Map.Entry<String, String> entry : subjects.entrySet()) {
+            List<RateLimitProperties.Window> windows = rateLimitProperties.getWindows().get(entry.getKey());
+            if (windows == null || windows.isEmpty()) {
+                continue;
+            }
+            String owner = entry.getKey() + ":" + entry.getValue();
+            if (blocked.get(owner) != null) {
+                // 已知还没有余量，不访问Redis
+                counters.computeIfAbsent(entry.getKey(), k -> new Counter()).localRejected.increment();
+                return false;
+            }
+            for (RateLimitProperties.Window window : windows) {
+                names.add(entry.getKey());
+                owners.add(owner);
+                keys.add(RATE_LIMIT_KEY + owner + ":" + window.getPeriod().toMillis());
+                args.add(String.valueOf(window.getPeriod().toMillis()));
+                args.add(String.valueOf(window.getPermits()));
+            }
+        }
+        if (keys.isEmpty()) {
+            return true;
+        }
+        List<?> result;
+        try {
+            result = stringRedisTemplate.execute(SLIDING_WINDOW_SCRIPT, keys, args.toArray());
+        } catch (Exception e) {
+            names.stream().distinct().forEach(name -> counters.computeIfAbsent(name, k -> new Counter()).errors.increment());
+            log.warn("滑动窗口限流执行失败，放行请求：{}", owners, e);
+            return true;
+        }
+        int index = result == null ? 0 : ((Long) result.get(0)).intValue();
+        if (index == 0) {
+            names.stream().distinct().forEach(name -> counters.computeIfAbsent(name, k -> new Counter()).passed.increment());
+            return true;
+        }
+        // 记录到窗口有余量为止（最长 localBlockMax，之后再由Redis判断）
+        long waitMillis = Math.max((Long) result.get(1), 1L);
+        blocked.put(owners.get(index - 1), now + waitMillis, waitMillis);
+        counters.computeIfAbsent(names.get(index - 1), k -> new Counter()).rejected.increment();
+        return false;
+    }
+
+    /**
+     * 当前请求的客户端IP。默认使用直接连接的地址；直接连接的是可信代理时，
+     * 从 X-Forwarded-For 的右边开始跳过可信代理，取第一个不可信的地址，没有时使用 X-Real-IP
+     */
+    public String clientIp() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return "unknown";
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        String remote = request.getRemoteAddr();
+        if (!isTrustedProxy(remote)) {
+            return remote;
+        }
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (StrUtil.isNotBlank(forwarded)) {
+            List<String> hops = StrUtil.splitTrim(forwarded, ',');
+            for (int i = hops.size() - 1; i >= 0; i--) {
+                if (!isTrustedProxy(hops.get(i))) {
+                    return hops.get(i);
+                }
+            }
+        }
+        String realIp = request.getHeader("X-Real-IP");
+        return StrUtil.isNotBlank(realIp) ? realIp.trim() : remote;
+    }
+
+    private boolean isTrustedProxy(String ip) {
+        for (String proxy : rateLimitProperties.getTrustedProxies()) {
+            if (proxy.equals(ip)) {
+                return true;
+            }
+            if (proxy.contains("/")) {
+                try {
+                    if (NetUtil.isInRange(ip, proxy)) {
+                        return true;
+                    }
+                } catch (RuntimeException e) {
+                    // 不是IPv4地址
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 各个接口的限流统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("localBuckets", buckets.size());
+        stats.put("localBlocked", blocked.stats());
+        counters.forEach((endpoint, counter) -> stats.put(endpoint, counter.stats()));
+        return stats;
+    }
+
+    private static class Counter {
+        private final LongAdder passed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * 在本地直接拒绝（没有访问Redis）的请求数
+         */
+        private final LongAdder localRejected = new LongAdder();
+
+        private Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("passed", passed.sum());
+            stats.put("rejected", rejected.sum());
+            stats.put("errors", errors.sum());
+            stats.put("localRejected", localRejected.sum());
+            return stats;
+        }
+    }
+}
@@ -27,6 +27,16 @@ public class RedisConstants {
      */
     public static final Long LOGIN_USER_TTL = 30L;
 
+    /**
+     * 登出（token失效）通知频道，各节点收到后删除本地缓存的登录用户
+     */
+    public static final String LOGIN_INVALIDATE_CHANNEL = "login:invalidate";
+
+    /**
+     * 已撤销（登出）的签名令牌，zset：成员为令牌id，分数为令牌的过期时间，过期后删除
+     */
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
+
     /**
      * 空对象缓存过期时间 默认为2分钟
      */
@@ -42,6 +52,66 @@ public class RedisConstants {
      */
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    /**
+     * 商铺缓存预热标记，值为执行预热的节点，存在时其他节点启动时不再预热
+     */
+    public static final String CACHE_WARM_UP_KEY = "cache:warm-up:shop";
+
+    /**
+     * 用户信息前缀
+     */
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    /**
+     * 用户信息过期时间 默认为30分钟
+     */
+    public static final Long CACHE_USER_TTL = 30L;
+
+    /**
+     * 优惠券信息前缀（目前只作为优惠券id布隆过滤器的名称，秒杀券的时间范围在加载前用它拦截不存在的id）
+     */
+    public static final String CACHE_VOUCHER_KEY = "cache:voucher:";
+
+    /**
+     * 商铺类型列表前缀
+     */
+    public static final String CACHE_SHOP_TYPE_KEY = "cache:shop-type:";
+
+    /**
+     * 商铺类型列表过期时间 默认为60分钟
+     */
+    public static final long CACHE_SHOP_TYPE_TTL = 60L;
+
+    /**
+     * 店铺优惠券列表前缀
+     */
+    public static final String CACHE_SHOP_VOUCHER_KEY = "cache:shop-voucher:";
+
+    /**
+     * 店铺优惠券列表过期时间 默认为5分钟（列表中包含秒杀库存，不宜太长）
+     */
+    public static final long CACHE_SHOP_VOUCHER_TTL = 5L;
+
+    /**
+     * 用户详情前缀
+     */
+    public static final String CACHE_USER_INFO_KEY = "cache:user-info:";
+
+    /**
+     * 用户详情过期时间 默认为30分钟
+     */
+    public static final long CACHE_USER_INFO_TTL = 30L;
+
+    /**
+     * 布隆过滤器新增id通知频道
+     */
+    public static final String BLOOM_ADD_CHANNEL = "bloom:add";
+
+    /**
+     * 本地缓存失效通知频道
+     */
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
     /**
      * 缓存重建互斥锁前缀
      */
@@ -52,17 +122,88 @@ public class RedisConstants {
      */
     public static final Long LOCK_SHOP_TTL = 10L;
 
+    /**
+     * 互斥锁策略下获取锁失败后的最大重试次数，超过后直接查询数据库
+     */
+    public static final int MUTEX_MAX_RETRIES = 20;
+
+    /**
+     * 互斥锁策略下获取锁失败后的重试间隔（毫秒）
+     */
+    public static final long MUTEX_RETRY_INTERVAL_MILLIS = 50L;
+
     /**
      * 秒杀优惠券库存前缀
      */
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
 
+    /**
+     * 秒杀券时间范围前缀，hash：begin 开始时间，end 结束时间（毫秒时间戳）
+     */
+    public static final String SECKILL_TIME_KEY = "seckill:time:";
+
+    /**
+     * 秒杀券订单前缀，购买过这个秒杀券的用户集合（与 seckill.lua 中的 orderKey 一致）。
+     * 分片时每个分片一个集合：SECKILL_ORDER_KEY + {优惠券id:分片号}
+     */
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+
+    /**
+     * 秒杀券库存分片数前缀，不存在表示没有分片。分片的库存key为 SECKILL_STOCK_KEY + {优惠券id:分片号}，
+     * 秒杀时间同样复制到 SECKILL_TIME_KEY + {优惠券id:分片号}
+     */
+    public static final String SECKILL_STOCK_SHARDS_KEY = "seckill:shards:";
+
+    /**
+     * 秒杀券补充库存通知频道，各节点收到后清除本地的售罄标记
+     */
+    public static final String SECKILL_RESTOCK_CHANNEL = "seckill:restock";
+
     /**
      * 优惠券订单前缀
      */
     public static final String VOUCHER_ORDER_KEY = "order";
 
+    /**
+     * 秒杀订单消息队列前缀，后面拼接分区号（与 seckill.lua 中的 streamKey 一致）
+     */
+    public static final String SECKILL_ORDER_STREAM_KEY = "stream.orders";
+
+    /**
+     * 秒杀订单消费者组
+     */
+    public static final String SECKILL_ORDER_GROUP = "order-workers";
+
+    /**
+     * 秒杀订单死信队列，多次创建失败后放弃处理的订单消息（原消息的字段，加上 stream 原队列、messageId 原消息id、error 失败原因）
+     */
+    public static final String SECKILL_ORDER_DEAD_KEY = "stream.orders.dead";
+
+    /**
+     * 秒杀排队凭证前缀，hash：status 状态（queued、succeeded、failed），userId，orderId，msg 失败原因（与 seckill.lua 中的 ticketKey 一致）
+     */
+    public static final String SECKILL_TICKET_KEY = "seckill:ticket:";
+
+    /**
+     * 全局限流（滑动窗口）前缀，后面拼接 接口名:资源:用户 或者 窗口名:请求方:窗口长度（毫秒），zset：成员为请求，分数为请求时间
+     */
+    public static final String RATE_LIMIT_KEY = "limit:";
+
+    /**
+     * 本地ID生成器的 worker id 租约前缀，后面拼接 worker id，值为持有租约的节点标识
+     */
+    public static final String ID_WORKER_KEY = "id:worker:";
+
+    /**
+     * 博客的点赞用户前缀，后面拼接博客id，zset：成员为用户id，分数为点赞时间（与 blog_like.lua 中的 KEYS[1] 一致）
+     */
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+
+    /**
+     * 还没有写回数据库的点赞数变化，hash：博客id -> 变化量
+     */
+    public static final String BLOG_LIKED_DELTA_KEY = "blog:liked-delta";
+
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
@@ -1,12 +1,24 @@
 package com.hmdp.utils;
 
+import com.hmdp.config.IdProperties;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * RedisIdWorker
@@ -14,8 +26,13 @@ import java.time.format.DateTimeFormatter;
  * @author sundae
  * @date 2024/11/15
  * @description 全局唯一ID生成器
+ * <p>
+ * ID = 31位时间戳（秒） + 32位当天的序列号，序列号保存在Redis的 icr:前缀:日期 中。
+ * 号段模式下一次 INCRBY 申请一段序列号在内存中分配，当前号段快用完时在后台申请下一段，ID的格式不变。
+ * 本地模式（snowflake）的低32位是 worker id + 每秒内的序列号，见 {@link SnowflakeIdGenerator}。
  */
 @Component
+@Slf4j
 public class RedisIdWorker {
     /**
      * 开始时间戳
@@ -30,6 +47,41 @@ public class RedisIdWorker {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private IdProperties idProperties;
+
+    @Resource
+    private WorkerIdLease workerIdLease;
+
+    /**
+     * 本地模式下当前租约对应的生成器，重新获取 worker id 后更换
+     */
+    private volatile LeasedGenerator leasedGenerator;
+
+    /**
+     * 当天的日期等信息，跨天时重新计算，避免每次生成ID都格式化日期
+     */
+    private volatile Day day = Day.of(System.currentTimeMillis());
+
+    /**
+     * key前缀 -> 号段
+     */
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+
+    /**
+     * 提前申请号段的线程
+     */
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    private void destroy() {
+        prefetchExecutor.shutdownNow();
+    }
+
     /**
      * 生成全局唯一ID
      *
@@ -37,18 +89,243 @@ public class RedisIdWorker {
      * @return {@link Long }
      */
     public Long nextId(String keyPrefix) {
-        // 1. 生成31位时间戳
-        LocalDateTime now = LocalDateTime.now();
-        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
-        long timestmap = nowSecond - BEGIN_TIMESTMAP;
+        if ("snowflake".equals(idProperties.getMode())) {
+            // 本地生成，不同前缀共用一个序列
+            return generator().nextId();
+        }
+        // 1. 生成31位时间戳（与 LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) 相同，即本地时间的秒数）
+        long nowMillis = System.currentTimeMillis();
+        Day today = currentDay(nowMillis);
+        long timestmap = timestamp(nowMillis, today);
         // 2. 生成32位序列号
-        // 2.1 获取当前日期，精确到天
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 2.1 利用Redis获取自增长序列号
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        long count = "segment".equals(idProperties.getMode())
+                ? nextCountFromSegment(keyPrefix, today.date)
+                // 利用Redis获取自增长序列号
+                : stringRedisTemplate.opsForValue().increment(counterKey(keyPrefix, today.date));
         // 3. 拼接全局唯一ID（利用或运算实现相加）
         return timestmap << COUNT_BITS | count;
     }
 
-}
+    /**
+     * 各个前缀的号段使用情况，或者本地生成器的状态
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", idProperties.getMode());
+        buffers.forEach((keyPrefix, buffer) -> stats.put(keyPrefix, buffer.stats()));
+        if ("snowflake".equals(idProperties.getMode())) {
+            stats.put("lease", workerIdLease.stats());
+            LeasedGenerator current = leasedGenerator;
+            if (current != null) {
+                stats.put("generator", current.generator.stats());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 当前租约对应的本地生成器
+     */
+    private SnowflakeIdGenerator generator() {
+        WorkerIdLease.Lease lease = workerIdLease.current();
+        LeasedGenerator current = leasedGenerator;
+        if (current != null && current.lease == lease) {
+            return current.generator;
+        }
+        synchronized (this) {
+            current = leasedGenerator;
+            if (current == null || current.lease != lease) {
+                // 从获取租约的下一秒开始使用，避免和这个 worker id 的上一个使用者在同一秒内重复
+                long startTimestamp = timestamp(lease.getAcquiredMillis(), Day.of(lease.getAcquiredMillis())) + 1;
+                SnowflakeIdGenerator generator = new SnowflakeIdGenerator(lease.getWorkerId(), startTimestamp,
+                        idProperties.getSnowflake().getMaxBackward().getSeconds(), this::currentTimestamp);
+                current = new LeasedGenerator(lease, generator);
+                leasedGenerator = current;
+            }
+            return current.generator;
+        }
+    }
+
+    private long currentTimestamp() {
+        long nowMillis = System.currentTimeMillis();
+        return timestamp(nowMillis, currentDay(nowMillis));
+    }
+
+    /**
+     * 31位时间戳：本地时间的秒数 - 开始时间戳
+     */
+    private static long timestamp(long millis, Day day) {
+        return Math.floorDiv(millis, 1000L) + day.offsetSeconds - BEGIN_TIMESTMAP;
+    }
+
+    private Day currentDay(long nowMillis) {
+        Day today = day;
+        if (nowMillis < today.startMillis || nowMillis >= today.endMillis) {
+            today = Day.of(nowMillis);
+            day = today;
+        }
+        return today;
+    }
 
+    private static String counterKey(String keyPrefix, String date) {
+        return "icr:" + keyPrefix + ":" + date;
+    }
+
+    /**
+     * 从当前号段分配一个序列号，号段用完（或者跨天）时切换到下一个号段
+     */
+    private long nextCountFromSegment(String keyPrefix, String date) {
+        SegmentBuffer buffer = buffers.computeIfAbsent(keyPrefix, SegmentBuffer::new);
+        while (true) {
+            Segment segment = buffer.current;
+            // 号段属于申请时的日期，跨天后不能再用，否则会和新的一天的序列号重复
+            if (segment != null && segment.date.equals(date)) {
+                long count = segment.cursor.getAndIncrement();
+                if (count < segment.end) {
+                    if (segment.end - count <= prefetchThreshold()) {
+                        prefetch(buffer, date);
+                    }
+                    return count;
+                }
+            }
+            buffer.switchSegment(segment, date);
+        }
+    }
+
+    private long prefetchThreshold() {
+        IdProperties.Segment config = idProperties.getSegment();
+        return (long) (config.getSize() * config.getPrefetchRatio());
+    }
+
+    private void prefetch(SegmentBuffer buffer, String date) {
+        if (buffer.next != null || !buffer.loading.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            prefetchExecutor.execute(() -> {
+                try {
+                    buffer.next = fetchSegment(buffer.keyPrefix, date);
+                } catch (Exception e) {
+                    // 没有提前申请到时，号段用完后在请求线程中申请
+                    log.error("提前申请号段失败：{}", buffer.keyPrefix, e);
+                } finally {
+                    buffer.loading.set(false);
+                }
+            });
+        } catch (Exception e) {
+            buffer.loading.set(false);
+        }
+    }
+
+    /**
+     * INCRBY 申请一段序列号 [max - size + 1, max]
+     */
+    private Segment fetchSegment(String keyPrefix, String date) {
+        int size = Math.max(idProperties.getSegment().getSize(), 1);
+        long max = stringRedisTemplate.opsForValue().increment(counterKey(keyPrefix, date), size);
+        return new Segment(date, max - size + 1, max + 1);
+    }
+
+    private class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private volatile Segment next;
+        private final AtomicBoolean loading = new AtomicBoolean();
+
+        private final LongAdder fetched = new LongAdder();
+
+        /**
+         * 号段用完时下一个号段还没准备好，只能在请求线程中申请的次数
+         */
+        private final LongAdder waits = new LongAdder();
+
+        private SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        /**
+         * 切换到下一个号段。只有第一个发现号段用完的线程会切换，其他线程切换完成后直接使用新的号段
+         *
+         * @param exhausted 已经用完（或者日期已经过去）的号段
+         * @param date      当前日期
+         */
+        private synchronized void switchSegment(Segment exhausted, String date) {
+            if (current != exhausted) {
+                return;
+            }
+            Segment segment = next;
+            next = null;
+            if (segment == null || !segment.date.equals(date)) {
+                waits.increment();
+                segment = fetchSegment(keyPrefix, date);
+            }
+            fetched.increment();
+            current = segment;
+        }
+
+        private Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            Segment segment = current;
+            stats.put("segments", fetched.sum());
+            stats.put("waits", waits.sum());
+            stats.put("remaining", segment == null ? 0 : Math.max(segment.end - segment.cursor.get(), 0));
+            stats.put("prefetched", next != null);
+            return stats;
+        }
+    }
+
+    private static class LeasedGenerator {
+        private final WorkerIdLease.Lease lease;
+        private final SnowflakeIdGenerator generator;
+
+        private LeasedGenerator(WorkerIdLease.Lease lease, SnowflakeIdGenerator generator) {
+            this.lease = lease;
+            this.generator = generator;
+        }
+    }
+
+    private static class Segment {
+        private final String date;
+        private final long end;
+        private final AtomicLong cursor;
+
+        /**
+         * @param date  申请号段时的日期
+         * @param start 第一个序列号
+         * @param end   最后一个序列号 + 1
+         */
+        private Segment(String date, long start, long end) {
+            this.date = date;
+            this.end = end;
+            this.cursor = new AtomicLong(start);
+        }
+    }
+
+    /**
+     * 一天的起止时间（毫秒）、日期（icr:前缀:yyyy:MM:dd 中的日期）和当天的时区偏移
+     */
+    private static class Day {
+        private final String date;
+        private final long startMillis;
+        private final long endMillis;
+        private final long offsetSeconds;
+
+        private Day(String date, long startMillis, long endMillis, long offsetSeconds) {
+            this.date = date;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.offsetSeconds = offsetSeconds;
+        }
+
+        private static Day of(long millis) {
+            ZoneId zone = ZoneId.systemDefault();
+            ZonedDateTime now = Instant.ofEpochMilli(millis).atZone(zone);
+            LocalDate date = now.toLocalDate();
+            return new Day(
+                    String.format("%04d:%02d:%02d", date.getYear(), date.getMonthValue(), date.getDayOfMonth()),
+                    date.atStartOfDay(zone).toInstant().toEpochMilli(),
+                    date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli(),
+                    now.getOffset().getTotalSeconds());
+        }
+    }
+}
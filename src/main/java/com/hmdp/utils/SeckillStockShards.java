@@ -0,0 +1,237 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.SeckillProperties;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_SHARDS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_TIME_KEY;
+
+/**
+ * SeckillStockShards
+ *
+ * @author sundae
+ * @date 2024/12/01
+ * @description 秒杀券Redis库存的读写。开启分片后库存平均拆分到多个分片上，购买用户集合也按用户id哈希拆分：
+ * 用户固定属于一个分片，在这个分片上原子地判断一人一单、扣减库存并记录用户，一个请求只访问一个分片。
+ * 一个分片的库存、用户集合和秒杀时间使用相同的 hash tag {优惠券id:分片号}，在集群中位于同一个槽；
+ * 用户所在分片的库存扣完后，再依次从其他分片扣减库存（这时才会访问多个分片）。
+ */
+@Component
+public class SeckillStockShards {
+    /**
+     * 成功
+     */
+    public static final int OK = 0;
+
+    /**
+     * 所有分片的库存都不足（与 seckill.lua 的返回值一致）
+     */
+    public static final int SOLD_OUT = 1;
+
+    private static final DefaultRedisScript<Long> SHARD_SCRIPT;
+    private static final DefaultRedisScript<Long> STOCK_SCRIPT;
+    static {
+        SHARD_SCRIPT = new DefaultRedisScript<>();
+        SHARD_SCRIPT.setLocation(new ClassPathResource("seckill_shard.lua"));
+        SHARD_SCRIPT.setResultType(Long.class);
+        STOCK_SCRIPT = new DefaultRedisScript<>();
+        STOCK_SCRIPT.setLocation(new ClassPathResource("seckill_stock.lua"));
+        STOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private SeckillProperties seckillProperties;
+
+    /**
+     * 优惠券id -> 分片数。分片数在创建秒杀券时确定，之后不会改变，所以可以一直缓存在本地
+     */
+    private final Map<Long, Integer> shardCounts = new ConcurrentHashMap<>();
+
+    /**
+     * 查询秒杀券的库存分片数
+     *
+     * @param voucherId 优惠券id
+     * @return 分片数，1表示没有分片（库存在 SECKILL_STOCK_KEY + 优惠券id 中）
+     */
+    public int shardCount(Long voucherId) {
+        return shardCounts.computeIfAbsent(voucherId, id -> {
+            String shards = stringRedisTemplate.opsForValue().get(SECKILL_STOCK_SHARDS_KEY + id);
+            return StrUtil.isBlank(shards) ? 1 : Integer.parseInt(shards);
+        });
+    }
+
+    /**
+     * 新建秒杀券时写入库存，按配置决定是否分片
+     *
+     * @param voucherId 优惠券id
+     * @param stock     库存
+     */
+    public void initStock(Long voucherId, int stock) {
+        int shards = Math.max(seckillProperties.getStockShards(), 1);
+        if (shards == 1) {
+            stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucherId, String.valueOf(stock));
+        } else {
+            for (int i = 0; i < shards; i++) {
+                stringRedisTemplate.opsForValue().set(shardKey(SECKILL_STOCK_KEY, voucherId, i), String.valueOf(share(stock, shards, i)));
+            }
+            stringRedisTemplate.opsForValue().set(SECKILL_STOCK_SHARDS_KEY + voucherId, String.valueOf(shards));
+        }
+        shardCounts.put(voucherId, shards);
+    }
+
+    /**
+     * 分片时把秒杀时间复制到每个分片上，供 seckill_shard.lua 在分片内判断
+     *
+     * @param voucherId 优惠券id
+     * @param window    begin 开始时间，end 结束时间（毫秒时间戳）
+     */
+    public void saveTimeWindow(Long voucherId, Map<String, String> window) {
+        int shards = shardCount(voucherId);
+        for (int i = 0; shards > 1 && i < shards; i++) {
+            stringRedisTemplate.opsForHash().putAll(shardKey(SECKILL_TIME_KEY, voucherId, i), window);
+        }
+    }
+
+    /**
+     * 补充库存，分片时平均补充到每个分片上
+     *
+     * @param voucherId 优惠券id
+     * @param amount    补充的数量
+     */
+    public void addStock(Long voucherId, int amount) {
+        int shards = shardCount(voucherId);
+        if (shards == 1) {
+            stringRedisTemplate.opsForValue().increment(SECKILL_STOCK_KEY + voucherId, amount);
+            return;
+        }
+        for (int i = 0; i < shards; i++) {
+            int share = share(amount, shards, i);
+            if (share > 0) {
+                stringRedisTemplate.opsForValue().increment(shardKey(SECKILL_STOCK_KEY, voucherId, i), share);
+            }
+        }
+    }
+
+    /**
+     * 在用户所在的分片上判断秒杀时间和一人一单，并扣减一个库存；这个分片的库存不足时从其他分片扣减
+     *
+     * @param voucherId 优惠券id
+     * @param userId    用户id
+     * @param now       当前时间（毫秒时间戳）
+     * @return 结果，成功时记录了用户所在的分片和扣减库存的分片，发送订单消息失败时用来归还
+     */
+    public Claim tryAcquire(Long voucherId, Long userId, long now) {
+        int shards = shardCount(voucherId);
+        int home = Math.floorMod(userId.hashCode(), shards);
+        int r = runShardScript(voucherId, home, userId, now, true);
+        if (r != SOLD_OUT) {
+            return new Claim(r, home, home);
+        }
+        // 用户所在分片的库存不足，依次从其他分片扣减
+        for (int i = 1; i < shards; i++) {
+            int shard = (home + i) % shards;
+            Long result = stringRedisTemplate.execute(STOCK_SCRIPT, Collections.singletonList(shardKey(SECKILL_STOCK_KEY, voucherId, shard)));
+            if (result != null && result == 0) {
+                // 再回到用户所在分片判断一人一单并记录用户，失败时归还库存
+                r = runShardScript(voucherId, home, userId, now, false);
+                if (r != OK) {
+                    stringRedisTemplate.opsForValue().increment(shardKey(SECKILL_STOCK_KEY, voucherId, shard));
+                }
+                return new Claim(r, home, shard);
+            }
+        }
+        return new Claim(SOLD_OUT, home, -1);
+    }
+
+    /**
+     * 撤销 {@link #tryAcquire} 的结果：删除用户并归还库存（发送订单消息失败时调用）
+     *
+     * @param voucherId 优惠券id
+     * @param userId    用户id
+     * @param claim     成功的结果
+     */
+    public void release(Long voucherId, Long userId, Claim claim) {
+        release(voucherId, userId, claim.homeShard, claim.stockShard);
+    }
+
+    /**
+     * 删除用户并归还库存（订单放弃处理时，根据订单消息中记录的分片调用）
+     *
+     * @param voucherId  优惠券id
+     * @param userId     用户id
+     * @param homeShard  用户所在的分片
+     * @param stockShard 扣减库存的分片
+     */
+    public void release(Long voucherId, Long userId, int homeShard, int stockShard) {
+        stringRedisTemplate.opsForSet().remove(shardKey(SECKILL_ORDER_KEY, voucherId, homeShard), userId.toString());
+        stringRedisTemplate.opsForValue().increment(shardKey(SECKILL_STOCK_KEY, voucherId, stockShard));
+    }
+
+    private int runShardScript(Long voucherId, int shard, Long userId, long now, boolean decrement) {
+        Long result = stringRedisTemplate.execute(SHARD_SCRIPT,
+                Arrays.asList(shardKey(SECKILL_STOCK_KEY, voucherId, shard),
+                        shardKey(SECKILL_ORDER_KEY, voucherId, shard),
+                        shardKey(SECKILL_TIME_KEY, voucherId, shard)),
+                userId.toString(), String.valueOf(now), decrement ? "1" : "0");
+        return result == null ? OK : result.intValue();
+    }
+
+    /**
+     * 分片的key：前缀 + {优惠券id:分片号}，同一个分片的key在集群中位于同一个槽
+     */
+    private static String shardKey(String prefix, Long voucherId, int shard) {
+        return prefix + "{" + voucherId + ":" + shard + "}";
+    }
+
+    /**
+     * 把 total 平均分成 shards 份，前面的分片多分余数
+     */
+    private static int share(int total, int shards, int shard) {
+        return total / shards + (shard < total % shards ? 1 : 0);
+    }
+
+    /**
+     * 分片秒杀的结果
+     */
+    public static class Claim {
+        private final int code;
+        private final int homeShard;
+        private final int stockShard;
+
+        private Claim(int code, int homeShard, int stockShard) {
+            this.code = code;
+            this.homeShard = homeShard;
+            this.stockShard = stockShard;
+        }
+
+        /**
+         * 0 成功，1 库存不足，2 重复下单，3 尚未开始，4 已经结束（与 seckill.lua 的返回值一致）
+         */
+        public int getCode() {
+            return code;
+        }
+
+        public int getHomeShard() {
+            return homeShard;
+        }
+
+        public int getStockShard() {
+            return stockShard;
+        }
+    }
+}
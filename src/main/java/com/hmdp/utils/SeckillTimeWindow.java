@@ -0,0 +1,141 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_TIME_KEY;
+
+/**
+ * SeckillTimeWindow
+ *
+ * @author sundae
+ * @date 2024/12/02
+ * @description 秒杀券的开始、结束时间。保存在Redis中（与库存放在一起，供 seckill.lua 原子判断），
+ * 同时在本地缓存一份，时间不对的请求在本地直接拒绝，不会访问Redis。
+ */
+@Component
+public class SeckillTimeWindow {
+    /**
+     * 在时间范围内
+     */
+    public static final int IN_WINDOW = 0;
+
+    /**
+     * 秒杀尚未开始（与 seckill.lua 的返回值一致）
+     */
+    public static final int NOT_STARTED = 3;
+
+    /**
+     * 秒杀已经结束（与 seckill.lua 的返回值一致）
+     */
+    public static final int ENDED = 4;
+
+    /**
+     * 不是秒杀券
+     */
+    public static final int NOT_FOUND = -1;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Resource
+    private SeckillProperties seckillProperties;
+
+    @Resource
+    private IdBloomFilter idBloomFilter;
+
+    @Resource
+    private SeckillStockShards seckillStockShards;
+
+    /**
+     * 优惠券id -> [开始时间, 结束时间]（毫秒时间戳）
+     */
+    private LocalCache windows;
+
+    @PostConstruct
+    private void init() {
+        windows = new LocalCache(10000, seckillProperties.getVoucherCacheTtl().toMillis());
+    }
+
+    /**
+     * 保存秒杀券的时间范围
+     *
+     * @param voucherId 优惠券id
+     * @param beginTime 开始时间
+     * @param endTime   结束时间
+     */
+    public void save(Long voucherId, LocalDateTime beginTime, LocalDateTime endTime) {
+        long[] window = {toMillis(beginTime), toMillis(endTime)};
+        Map<String, String> hash = new HashMap<>(4);
+        hash.put("begin", String.valueOf(window[0]));
+        hash.put("end", String.valueOf(window[1]));
+        stringRedisTemplate.opsForHash().putAll(SECKILL_TIME_KEY + voucherId, hash);
+        seckillStockShards.saveTimeWindow(voucherId, hash);
+        windows.put(voucherId.toString(), window);
+    }
+
+    /**
+     * 判断当前时间是否在秒杀时间范围内
+     *
+     * @param voucherId 优惠券id
+     * @param now       当前时间（毫秒时间戳）
+     * @return {@link #IN_WINDOW}、{@link #NOT_STARTED}、{@link #ENDED} 或者 {@link #NOT_FOUND}
+     */
+    public int check(Long voucherId, long now) {
+        Object cached = windows.get(voucherId.toString());
+        if (cached == null) {
+            cached = load(voucherId);
+            windows.put(voucherId.toString(), cached);
+        }
+        if (cached == LocalCache.NULL_VALUE) {
+            return NOT_FOUND;
+        }
+        long[] window = (long[]) cached;
+        if (now < window[0]) {
+            return NOT_STARTED;
+        }
+        return now > window[1] ? ENDED : IN_WINDOW;
+    }
+
+    /**
+     * 先从Redis读取；Redis中没有时（在这个功能之前创建的秒杀券）从数据库读取并写回Redis。
+     * 布隆过滤器判断不存在的id直接返回，不访问Redis和数据库
+     */
+    private Object load(Long voucherId) {
+        if (!idBloomFilter.mightContain(CACHE_VOUCHER_KEY, voucherId)) {
+            return LocalCache.NULL_VALUE;
+        }
+        List<Object> values = stringRedisTemplate.opsForHash()
+                .multiGet(SECKILL_TIME_KEY + voucherId, Arrays.asList("begin", "end"));
+        if (values.get(0) != null && values.get(1) != null) {
+            return new long[]{Long.parseLong(StrUtil.toString(values.get(0))), Long.parseLong(StrUtil.toString(values.get(1)))};
+        }
+        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        if (voucher == null) {
+            return LocalCache.NULL_VALUE;
+        }
+        save(voucherId, voucher.getBeginTime(), voucher.getEndTime());
+        return new long[]{toMillis(voucher.getBeginTime()), toMillis(voucher.getEndTime())};
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
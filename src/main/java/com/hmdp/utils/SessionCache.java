@@ -0,0 +1,313 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SessionProperties;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * SessionCache
+ *
+ * @author sundae
+ * @date 2024/12/06
+ * @description 登录用户的读取和刷新。用户在本地缓存一小段时间，同时记录token在Redis中的过期时间，
+ * 剩余有效期低于阈值时才刷新，大部分请求不需要访问Redis；登出时通过频道通知所有节点删除本地缓存。
+ * <p>
+ * 签名令牌模式（hmdp.session.mode=signed）下在本地校验签名，登出的会话（包括重新签发的令牌）记录在Redis的撤销列表中，
+ * 每个节点在内存中保存一份（通过登出通知和定时同步更新），校验时完全不访问Redis。
+ */
+@Component
+@Slf4j
+public class SessionCache {
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private SessionProperties sessionProperties;
+
+    /**
+     * token -> 登录用户
+     */
+    private LocalCache sessions;
+
+    /**
+     * 签名令牌，redis 模式下为null
+     */
+    private SessionTokens tokens;
+
+    /**
+     * 已撤销的会话id -> 这个会话的令牌最晚的过期时间
+     */
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService revocationSync;
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder reissues = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        sessions = new LocalCache(sessionProperties.getLocalMaximumSize(), sessionProperties.getLocalTtl().toMillis());
+        if (isSigned()) {
+            SessionProperties.Signed signed = sessionProperties.getSigned();
+            tokens = new SessionTokens(signed.getKeys(), signed.getActiveKey(), signed.getTtl().toMillis());
+            long interval = signed.getRevocationSyncInterval().toMillis();
+            revocationSync = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "session-revocation-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            revocationSync.scheduleWithFixedDelay(this::syncRevoked, 0, interval, TimeUnit.MILLISECONDS);
+        }
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> onInvalidated(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(LOGIN_INVALIDATE_CHANNEL));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (revocationSync != null) {
+            revocationSync.shutdownNow();
+        }
+    }
+
+    /**
+     * 是否使用签名令牌
+     */
+    public boolean isSigned() {
+        return "signed".equals(sessionProperties.getMode());
+    }
+
+    /**
+     * 签发签名令牌（签名令牌模式下登录时调用）
+     *
+     * @param user 登录用户
+     * @return 令牌
+     */
+    public String issue(UserDTO user) {
+        return tokens.issue(user);
+    }
+
+    /**
+     * 根据token获取登录用户，必要时刷新token的有效期
+     *
+     * @param token 登录令牌
+     * @return 登录用户，没有登录（或者已经过期）时返回null
+     */
+    public UserDTO get(String token) {
+        Session session = sessionProperties.isLocalEnabled() ? (Session) sessions.get(token) : null;
+        if (session == null) {
+            session = isSigned() ? verify(token) : load(token);
+            if (session == null) {
+                return null;
+            }
+            if (sessionProperties.isLocalEnabled()) {
+                sessions.put(token, session);
+            }
+        }
+        long now = System.currentTimeMillis();
+        if (isSigned()) {
+            // 本地缓存的令牌可能在之后过期或者被撤销
+            return session.expireAt <= now || revoked.containsKey(session.sid) ? null : session.user;
+        }
+        if (session.expireAt - now < sessionProperties.getRefreshThreshold().toMillis()) {
+            // 刷新 token 的有效期
+            refreshes.increment();
+            if (!Boolean.TRUE.equals(stringRedisTemplate.expire(LOGIN_USER_KEY + token, Duration.ofMinutes(LOGIN_USER_TTL)))) {
+                // token 已经不存在了（过期或者在其他节点登出）
+                sessions.invalidate(token);
+                return null;
+            }
+            session.expireAt = now + Duration.ofMinutes(LOGIN_USER_TTL).toMillis();
+        }
+        return session.user;
+    }
+
+    /**
+     * 签名令牌快要过期时签发新令牌（在 {@link #get(String)} 返回了用户之后调用）
+     *
+     * @param token 登录令牌
+     * @return 新令牌，不需要更换时返回null
+     */
+    public String reissue(String token) {
+        if (!isSigned()) {
+            return null;
+        }
+        Session session = (Session) sessions.get(token);
+        if (session == null) {
+            session = verify(token);
+            if (session == null) {
+                return null;
+            }
+        }
+        if (session.expireAt - System.currentTimeMillis() >= sessionProperties.getSigned().getReissueThreshold().toMillis()) {
+            return null;
+        }
+        // 同一个令牌的并发请求拿到同一个新令牌
+        if (session.reissued == null) {
+            reissues.increment();
+            session.reissued = tokens.issue(session.user, session.sid);
+        }
+        return session.reissued;
+    }
+
+    /**
+     * 登出：删除token（签名令牌的会话加入撤销列表），并通知所有节点（包括自己）删除本地缓存
+     *
+     * @param token 登录令牌
+     */
+    public void invalidate(String token) {
+        if (isSigned()) {
+            SessionTokens.Claims claims = tokens.parse(token);
+            if (claims == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().add(LOGIN_REVOKED_KEY, claims.getSid(), revokedUntil(claims, now));
+            // 顺便清理已经过期的令牌，撤销列表中只保留还没过期的令牌
+            stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_REVOKED_KEY, 0, now);
+        } else {
+            stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        }
+        onInvalidated(token);
+        stringRedisTemplate.convertAndSend(LOGIN_INVALIDATE_CHANNEL, token);
+    }
+
+    private void onInvalidated(String token) {
+        sessions.invalidate(token);
+        if (isSigned()) {
+            SessionTokens.Claims claims = tokens.parse(token);
+            if (claims != null) {
+                revoked.put(claims.getSid(), revokedUntil(claims, System.currentTimeMillis()));
+            }
+        }
+    }
+
+    /**
+     * 会话需要撤销到什么时候：登出的令牌可能已经被重新签发过，新令牌最晚在 现在 + 有效期 过期
+     */
+    private long revokedUntil(SessionTokens.Claims claims, long now) {
+        return Math.max(claims.getExpireAt(), now + sessionProperties.getSigned().getTtl().toMillis());
+    }
+
+    /**
+     * 从Redis同步撤销列表，同时删除本地已经过期的记录
+     */
+    private void syncRevoked() {
+        try {
+            long now = System.currentTimeMillis();
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(LOGIN_REVOKED_KEY, now, Double.MAX_VALUE);
+            if (tuples != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                    if (tuple.getValue() != null && tuple.getScore() != null) {
+                        revoked.put(tuple.getValue(), tuple.getScore().longValue());
+                    }
+                }
+            }
+            revoked.values().removeIf(expireAt -> expireAt <= now);
+        } catch (Exception e) {
+            log.error("同步令牌撤销列表失败", e);
+        }
+    }
+
+    /**
+     * 校验签名令牌
+     */
+    private Session verify(String token) {
+        SessionTokens.Claims claims = tokens.parse(token);
+        if (claims == null || claims.getExpireAt() <= System.currentTimeMillis()) {
+            return null;
+        }
+        Session session = new Session();
+        session.user = claims.getUser();
+        session.expireAt = claims.getExpireAt();
+        session.sid = claims.getSid();
+        return session;
+    }
+
+    /**
+     * 用管道在一次往返中读取用户和token的剩余有效期
+     */
+    private Session load(String token) {
+        loads.increment();
+        byte[] key = (LOGIN_USER_KEY + token).getBytes(StandardCharsets.UTF_8);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hGetAll(key);
+            connection.pTtl(key);
+            return null;
+        });
+        Map<?, ?> userMap = (Map<?, ?>) results.get(0);
+        if (userMap == null || userMap.isEmpty()) {
+            return null;
+        }
+        Long ttl = (Long) results.get(1);
+        Session session = new Session();
+        session.user = UserDTOMapper.fromHash(userMap);
+        // -1 表示没有过期时间，-2 表示刚刚过期（按需要刷新处理）
+        session.expireAt = ttl == null || ttl == -1 ? Long.MAX_VALUE : System.currentTimeMillis() + Math.max(ttl, 0);
+        return session;
+    }
+
+    /**
+     * 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", sessionProperties.getMode());
+        stats.put("local", sessions.stats());
+        stats.put("loads", loads.sum());
+        stats.put("refreshes", refreshes.sum());
+        stats.put("reissues", reissues.sum());
+        stats.put("revoked", revoked.size());
+        return stats;
+    }
+
+    private static class Session {
+        private UserDTO user;
+
+        /**
+         * token在Redis中的过期时间（毫秒），根据读取或者刷新时的剩余有效期推算；签名令牌为令牌中的过期时间
+         */
+        private volatile long expireAt;
+
+        /**
+         * 签名令牌的会话id
+         */
+        private String sid;
+
+        /**
+         * 签名令牌快过期时签发的新令牌
+         */
+        private volatile String reissued;
+    }
+}
@@ -0,0 +1,182 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SessionTokens
+ *
+ * @author sundae
+ * @date 2024/12/07
+ * @description 无状态的登录令牌：令牌本身带有用户信息和过期时间，用HMAC-SHA256签名，校验时不需要访问Redis。
+ * <p>
+ * 格式为 密钥id.用户信息（Base64URL编码的JSON）.签名。签发时使用当前密钥，校验时按令牌中的密钥id选择密钥，
+ * 更换密钥时先加入新密钥并切换当前密钥，等旧令牌全部过期后再删除旧密钥。
+ * <p>
+ * 令牌中的会话id（sid）在登录时生成，快过期时重新签发的令牌沿用同一个会话id，登出时按会话id撤销整条链上的令牌。
+ */
+public class SessionTokens {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    /**
+     * 密钥的最小长度（字节），与 HMAC-SHA256 的输出长度相同
+     */
+    private static final int MIN_KEY_BYTES = 32;
+
+    /**
+     * 示例配置中的占位密钥，不能直接使用
+     */
+    private static final String PLACEHOLDER = "change-me";
+
+    private final Map<String, SecretKeySpec> keys = new HashMap<>();
+    private final String activeKey;
+    private final long ttlMillis;
+
+    /**
+     * Mac 不是线程安全的，每个线程每个密钥一个
+     */
+    private final ThreadLocal<Map<String, Mac>> macs = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * @param keys      密钥id -> 密钥
+     * @param activeKey 签发令牌使用的密钥id
+     * @param ttlMillis 令牌有效期（毫秒）
+     */
+    public SessionTokens(Map<String, String> keys, String activeKey, long ttlMillis) {
+        if (!keys.containsKey(activeKey)) {
+            throw new IllegalArgumentException("没有配置签发令牌使用的密钥：" + activeKey);
+        }
+        keys.forEach((id, secret) -> {
+            if (id.contains(".")) {
+                throw new IllegalArgumentException("令牌密钥id不能包含'.'：" + id);
+            }
+            if (StrUtil.isBlank(secret) || secret.contains(PLACEHOLDER)) {
+                throw new IllegalArgumentException("没有配置令牌密钥（或者使用了占位密钥）：" + id);
+            }
+            if (secret.getBytes(StandardCharsets.UTF_8).length < MIN_KEY_BYTES) {
+                throw new IllegalArgumentException("令牌密钥至少需要" + MIN_KEY_BYTES + "字节：" + id);
+            }
+            this.keys.put(id, new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+        });
+        this.activeKey = activeKey;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 登录时签发令牌，生成新的会话id
+     *
+     * @param user 登录用户
+     * @return 令牌
+     */
+    public String issue(UserDTO user) {
+        return issue(user, RandomUtil.randomString(16));
+    }
+
+    /**
+     * 签发令牌
+     *
+     * @param user 登录用户
+     * @param sid  会话id，重新签发时沿用原令牌的会话id
+     * @return 令牌
+     */
+    public String issue(UserDTO user, String sid) {
+        JSONObject claims = new JSONObject();
+        claims.set("id", user.getId());
+        claims.set("nickName", user.getNickName());
+        claims.set("icon", user.getIcon());
+        claims.set("exp", System.currentTimeMillis() + ttlMillis);
+        claims.set("sid", sid);
+        String unsigned = activeKey + "." + ENCODER.encodeToString(claims.toString().getBytes(StandardCharsets.UTF_8));
+        return unsigned + "." + ENCODER.encodeToString(sign(activeKey, unsigned));
+    }
+
+    /**
+     * 校验签名并解析令牌，不检查是否过期
+     *
+     * @param token 令牌
+     * @return 令牌中的信息，格式错误、密钥不存在或者签名不正确时返回null
+     */
+    public Claims parse(String token) {
+        int first = token.indexOf('.');
+        int last = token.lastIndexOf('.');
+        if (first <= 0 || last == first) {
+            return null;
+        }
+        String keyId = token.substring(0, first);
+        if (!keys.containsKey(keyId)) {
+            return null;
+        }
+        try {
+            byte[] signature = DECODER.decode(token.substring(last + 1));
+            if (!MessageDigest.isEqual(signature, sign(keyId, token.substring(0, last)))) {
+                return null;
+            }
+            JSONObject json = JSONUtil.parseObj(new String(DECODER.decode(token.substring(first + 1, last)), StandardCharsets.UTF_8));
+            UserDTO user = new UserDTO();
+            user.setId(json.getLong("id"));
+            user.setNickName(json.getStr("nickName"));
+            user.setIcon(json.getStr("icon"));
+            return new Claims(user, json.getLong("exp"), json.getStr("sid"));
+        } catch (RuntimeException e) {
+            // Base64 或者 JSON 格式错误
+            return null;
+        }
+    }
+
+    private byte[] sign(String keyId, String content) {
+        Mac mac = macs.get().computeIfAbsent(keyId, id -> {
+            try {
+                Mac instance = Mac.getInstance(ALGORITHM);
+                instance.init(keys.get(id));
+                return instance;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return mac.doFinal(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static class Claims {
+        private final UserDTO user;
+        private final long expireAt;
+        private final String sid;
+
+        private Claims(UserDTO user, long expireAt, String sid) {
+            this.user = user;
+            this.expireAt = expireAt;
+            this.sid = sid;
+        }
+
+        public UserDTO getUser() {
+            return user;
+        }
+
+        /**
+         * 过期时间（毫秒）
+         */
+        public long getExpireAt() {
+            return expireAt;
+        }
+
+        /**
+         * 会话id，登出时加入撤销列表
+         */
+        public String getSid() {
+            return sid;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * SingleFlight
+ *
+ * @author sundae
+ * @date 2024/11/21
+ * @description 请求合并：同一个key同时只有一个线程真正去加载，其余线程等待并共享同一个结果
+ */
+public class SingleFlight {
+
+    private final Map<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 真正执行加载的次数
+     */
+    private final LongAdder loads = new LongAdder();
+
+    /**
+     * 被合并（没有执行加载，直接等待结果）的调用次数
+     */
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * 执行加载。同一个key正在加载时，当前线程不会重复加载，而是等待正在进行的加载完成并返回相同的结果。
+     * 加载抛出的异常会原样传递给所有等待的线程。
+     *
+     * @param key    键
+     * @param loader 加载方法
+     * @return 加载结果
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R execute(String key, Supplier<R> loader) {
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, call);
+        if (existing != null) {
+            // 已经有线程在加载了，等待它的结果
+            coalesced.increment();
+            return (R) await(existing);
+        }
+        loads.increment();
+        try {
+            R r = loader.get();
+            call.complete(r);
+            return r;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            // 加载完成后立即移除，之后的请求重新走缓存
+            calls.remove(key, call);
+        }
+    }
+
+    private Object await(CompletableFuture<Object> call) {
+        try {
+            return call.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("loads", loads.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("inFlight", calls.size());
+        return stats;
+    }
+}
@@ -0,0 +1,112 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * SnowflakeIdGenerator
+ *
+ * @author sundae
+ * @date 2024/12/05
+ * @description 本地ID生成器：ID = 31位时间戳（秒） + 10位 worker id + 22位每秒内的序列号。
+ * 高31位与 {@link RedisIdWorker} 的时间戳相同，低32位由 worker id 和序列号组成，每个节点每秒最多生成 4194304 个ID。
+ * <p>
+ * 上一次的时间戳和序列号保存在一个 AtomicLong 中，通过CAS更新，生成ID时不加锁也不创建对象。
+ * 时钟回拨不超过 maxBackwardSeconds 时继续使用上一次的时间戳（序列号接着递增），超过时抛出异常。
+ */
+public class SnowflakeIdGenerator {
+    public static final int WORKER_BITS = 10;
+    public static final int SEQUENCE_BITS = 22;
+    public static final int MAX_WORKER_ID = (1 << WORKER_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int TIMESTAMP_SHIFT = WORKER_BITS + SEQUENCE_BITS;
+
+    private final int workerId;
+    private final long workerBits;
+    private final long maxBackwardSeconds;
+
+    /**
+     * 返回当前时间戳（秒），与ID中的时间戳含义相同
+     */
+    private final LongSupplier clock;
+
+    /**
+     * 上一个ID的 时间戳 << SEQUENCE_BITS | 序列号
+     */
+    private final AtomicLong state;
+
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+
+    /**
+     * @param workerId           worker id，1 ~ {@link #MAX_WORKER_ID}
+     * @param startTimestamp     最早可以使用的时间戳，早于这个时间的请求会等待（避免和这个 worker id 的上一个使用者重复）
+     * @param maxBackwardSeconds 允许的时钟回拨秒数
+     * @param clock              时钟
+     */
+    public SnowflakeIdGenerator(int workerId, long startTimestamp, long maxBackwardSeconds, LongSupplier clock) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("worker id 超出范围：" + workerId);
+        }
+        this.workerId = workerId;
+        this.workerBits = (long) workerId << SEQUENCE_BITS;
+        this.maxBackwardSeconds = maxBackwardSeconds;
+        this.clock = clock;
+        // 相当于 startTimestamp - 1 这一秒的序列号已经用完
+        this.state = new AtomicLong((Math.max(startTimestamp, 1) << SEQUENCE_BITS) - 1);
+    }
+
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * 生成ID
+     *
+     * @return ID
+     * @throws IllegalStateException 时钟回拨超过允许的范围
+     */
+    public long nextId() {
+        while (true) {
+            long now = clock.getAsLong();
+            long current = state.get();
+            long currentTimestamp = current >>> SEQUENCE_BITS;
+            long next;
+            if (now > currentTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                if (now < currentTimestamp) {
+                    if (currentTimestamp - now > maxBackwardSeconds) {
+                        throw new IllegalStateException("时钟回拨" + (currentTimestamp - now) + "秒，超过允许的" + maxBackwardSeconds + "秒");
+                    }
+                    rollbacks.increment();
+                }
+                if ((current & SEQUENCE_MASK) == SEQUENCE_MASK) {
+                    // 这一秒的序列号用完了，等待时钟走到下一秒
+                    waits.increment();
+                    LockSupport.parkNanos(100_000L);
+                    continue;
+                }
+                next = current + 1;
+            }
+            if (state.compareAndSet(current, next)) {
+                return (next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT | workerBits | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workerId", workerId);
+        stats.put("waits", waits.sum());
+        stats.put("rollbacks", rollbacks.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,110 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_RESTOCK_CHANNEL;
+
+/**
+ * SoldOutMarker
+ *
+ * @author sundae
+ * @date 2024/11/30
+ * @description 秒杀券售罄标记（每个节点各自一份）。售罄后的请求直接在本地拒绝，不再执行Lua脚本；
+ * 补充库存时通过频道通知所有节点清除标记。标记有存活时间，即使丢了通知也会在一段时间后重新访问Redis。
+ */
+@Component
+@Slf4j
+public class SoldOutMarker {
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private SeckillProperties seckillProperties;
+
+    /**
+     * 优惠券id -> 标记售罄的时间
+     */
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> onRestocked(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(SECKILL_RESTOCK_CHANNEL));
+    }
+
+    /**
+     * 判断优惠券是否已经售罄，售罄时记录一次拒绝
+     *
+     * @param voucherId 优惠券id
+     * @return true 表示已经售罄，可以直接拒绝
+     */
+    public boolean isSoldOut(Long voucherId) {
+        Long markedAt = soldOut.get(voucherId);
+        if (markedAt == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - markedAt > seckillProperties.getSoldOutTtl().toMillis()) {
+            // 标记过期，放一个请求去Redis确认，仍然售罄时会重新标记
+            soldOut.remove(voucherId, markedAt);
+            return false;
+        }
+        rejected.increment();
+        return true;
+    }
+
+    /**
+     * 标记优惠券已经售罄
+     *
+     * @param voucherId 优惠券id
+     */
+    public void markSoldOut(Long voucherId) {
+        soldOut.put(voucherId, System.currentTimeMillis());
+    }
+
+    /**
+     * 补充库存后调用，通知所有节点（包括自己）清除售罄标记
+     *
+     * @param voucherId 优惠券id
+     */
+    public void restocked(Long voucherId) {
+        soldOut.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_RESTOCK_CHANNEL, voucherId.toString());
+    }
+
+    private void onRestocked(String voucherId) {
+        try {
+            soldOut.remove(Long.valueOf(voucherId));
+        } catch (NumberFormatException e) {
+            log.warn("无效的补充库存通知：{}", voucherId);
+        }
+    }
+
+    /**
+     * 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("soldOutVouchers", soldOut.keySet());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,60 @@
+package com.hmdp.utils;
+
+/**
+ * TokenBucket
+ *
+ * @author sundae
+ * @date 2024/12/03
+ * @description 令牌桶：按固定速率生成令牌，最多攒到容量为止，每个请求消耗一个令牌。
+ * 令牌在获取时按经过的时间补充，不需要后台线程
+ */
+public class TokenBucket {
+    private final double capacity;
+
+    /**
+     * 每纳秒生成的令牌数
+     */
+    private final double tokensPerNano;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    /**
+     * @param capacity    容量（允许的突发请求数），新建的令牌桶是满的
+     * @param permits     每个周期生成的令牌数
+     * @param periodNanos 周期（纳秒）
+     */
+    public TokenBucket(int capacity, int permits, long periodNanos) {
+        this.capacity = Math.max(capacity, 1);
+        this.tokensPerNano = (double) Math.max(permits, 1) / Math.max(periodNanos, 1);
+        this.tokens = this.capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @return 没有令牌时返回false
+     */
+    public synchronized boolean tryAcquire() {
+        long nowNanos = System.nanoTime();
+        long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefillNanos = nowNanos;
+        }
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * 从空桶到满桶需要的时间（毫秒），超过这个时间没有访问的令牌桶和新建的没有区别，可以直接丢弃
+     */
+    public long refillMillis() {
+        return (long) Math.ceil(capacity / tokensPerNano / 1_000_000);
+    }
+}
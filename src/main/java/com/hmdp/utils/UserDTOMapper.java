@@ -0,0 +1,77 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.User;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * UserDTOMapper
+ *
+ * @author sundae
+ * @date 2024/12/08
+ * @description UserDTO 的手写映射，代替登录、校验登录状态和查询笔记时基于反射的 BeanUtil。
+ * UserDTO 增加字段时需要同步修改这里
+ */
+public final class UserDTOMapper {
+    private static final String ID = "id";
+    private static final String NICK_NAME = "nickName";
+    private static final String ICON = "icon";
+
+    private UserDTOMapper() {
+    }
+
+    /**
+     * User -> UserDTO
+     */
+    public static UserDTO fromUser(User user) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(user.getId());
+        userDTO.setNickName(user.getNickName());
+        userDTO.setIcon(user.getIcon());
+        return userDTO;
+    }
+
+    /**
+     * UserDTO -> 保存到Redis的Hash，值为空的字段不保存（与 BeanUtil.beanToMap 忽略空值相同）
+     */
+    public static Map<String, String> toHash(UserDTO userDTO) {
+        Map<String, String> hash = new HashMap<>(4);
+        if (userDTO.getId() != null) {
+            hash.put(ID, userDTO.getId().toString());
+        }
+        if (userDTO.getNickName() != null) {
+            hash.put(NICK_NAME, userDTO.getNickName());
+        }
+        if (userDTO.getIcon() != null) {
+            hash.put(ICON, userDTO.getIcon());
+        }
+        return hash;
+    }
+
+    /**
+     * Redis中的Hash -> UserDTO
+     */
+    public static UserDTO fromHash(Map<?, ?> hash) {
+        UserDTO userDTO = new UserDTO();
+        Object id = hash.get(ID);
+        if (id != null) {
+            userDTO.setId(Long.valueOf(id.toString()));
+        }
+        Object nickName = hash.get(NICK_NAME);
+        userDTO.setNickName(nickName == null ? null : nickName.toString());
+        Object icon = hash.get(ICON);
+        userDTO.setIcon(icon == null ? null : icon.toString());
+        return userDTO;
+    }
+
+    /**
+     * 把作者的昵称、头像填充到笔记中
+     */
+    public static void fillBlogUser(Blog blog, UserDTO user) {
+        blog.setName(user.getNickName());
+        blog.setIcon(user.getIcon());
+    }
+}
@@ -0,0 +1,193 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.RandomUtil;
+import com.hmdp.config.IdProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+
+/**
+ * WorkerIdLease
+ *
+ * @author sundae
+ * @date 2024/12/05
+ * @description 本地ID生成器的 worker id：启动时在Redis中用 SET NX 抢占一个空闲的 worker id，之后定时续期。
+ * worker id 从1开始（0留给Redis自增模式，两种模式的ID不会重复）；租约过期前没有续期成功就不能再使用这个 worker id。
+ */
+@Component
+@Slf4j
+public class WorkerIdLease {
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT;
+    static {
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setLocation(new ClassPathResource("worker_lease.lua"));
+        LEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IdProperties idProperties;
+
+    /**
+     * 节点标识（进程号@主机名 + 随机串），用来判断租约是否还属于自己
+     */
+    private final String token = ManagementFactory.getRuntimeMXBean().getName() + ":" + RandomUtil.randomString(8);
+
+    private volatile Lease lease;
+
+    private ScheduledExecutorService heartbeat;
+
+    private final LongAdder renewals = new LongAdder();
+    private final LongAdder renewalFailures = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        if (!"snowflake".equals(idProperties.getMode())) {
+            return;
+        }
+        try {
+            acquire();
+        } catch (Exception e) {
+            // 启动时Redis不可用，由心跳线程继续尝试
+            log.error("获取 worker id 失败", e);
+        }
+        long interval = Math.max(idProperties.getSnowflake().getLeaseTtl().toMillis() / 3, 1);
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "worker-id-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::renew, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (heartbeat == null) {
+            return;
+        }
+        heartbeat.shutdownNow();
+        Lease current = lease;
+        if (current != null) {
+            try {
+                stringRedisTemplate.execute(LEASE_SCRIPT, Collections.singletonList(ID_WORKER_KEY + current.workerId), token, "0");
+            } catch (Exception e) {
+                log.warn("释放 worker id 失败，等待租约过期：{}", current.workerId, e);
+            }
+        }
+    }
+
+    /**
+     * 当前有效的租约
+     *
+     * @return 租约，每次重新获取 worker id 后是一个新的对象
+     * @throws IllegalStateException 没有租约或者租约已经过期
+     */
+    public Lease current() {
+        Lease current = lease;
+        if (current == null || System.currentTimeMillis() >= current.deadline) {
+            throw new IllegalStateException("没有有效的 worker id 租约");
+        }
+        return current;
+    }
+
+    /**
+     * 从随机位置开始依次尝试，抢占一个空闲的 worker id
+     */
+    private void acquire() {
+        long ttl = idProperties.getSnowflake().getLeaseTtl().toMillis();
+        int offset = RandomUtil.randomInt(SnowflakeIdGenerator.MAX_WORKER_ID);
+        for (int i = 0; i < SnowflakeIdGenerator.MAX_WORKER_ID; i++) {
+            int workerId = 1 + (offset + i) % SnowflakeIdGenerator.MAX_WORKER_ID;
+            long start = System.currentTimeMillis();
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(ID_WORKER_KEY + workerId, token, ttl, TimeUnit.MILLISECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                lease = new Lease(workerId, start, start + ttl);
+                log.info("获取 worker id：{}", workerId);
+                return;
+            }
+        }
+        throw new IllegalStateException("没有空闲的 worker id");
+    }
+
+    private void renew() {
+        try {
+            Lease current = lease;
+            if (current == null) {
+                acquire();
+                return;
+            }
+            long ttl = idProperties.getSnowflake().getLeaseTtl().toMillis();
+            // 以发送请求之前的时间计算过期时间，本地的过期时间不会晚于Redis中的
+            long start = System.currentTimeMillis();
+            Long result = stringRedisTemplate.execute(LEASE_SCRIPT,
+                    Collections.singletonList(ID_WORKER_KEY + current.workerId), token, String.valueOf(ttl));
+            if (result != null && result == 1) {
+                current.deadline = start + ttl;
+                renewals.increment();
+                return;
+            }
+            // 租约已经过期并且被其他节点抢占，重新获取
+            log.warn("worker id 租约已经失效，重新获取：{}", current.workerId);
+            lease = null;
+            acquire();
+        } catch (Exception e) {
+            renewalFailures.increment();
+            log.error("续期 worker id 失败", e);
+        }
+    }
+
+    /**
+     * 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Lease current = lease;
+        stats.put("workerId", current == null ? -1 : current.workerId);
+        stats.put("leaseRemainingMillis", current == null ? 0 : Math.max(current.deadline - System.currentTimeMillis(), 0));
+        stats.put("renewals", renewals.sum());
+        stats.put("renewalFailures", renewalFailures.sum());
+        return stats;
+    }
+
+    public static class Lease {
+        private final int workerId;
+        private final long acquiredMillis;
+        private volatile long deadline;
+
+        private Lease(int workerId, long acquiredMillis, long deadline) {
+            this.workerId = workerId;
+            this.acquiredMillis = acquiredMillis;
+            this.deadline = deadline;
+        }
+
+        public int getWorkerId() {
+            return workerId;
+        }
+
+        /**
+         * 获取租约的时间（毫秒）
+         */
+        public long getAcquiredMillis() {
+            return acquiredMillis;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.RedisData;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BinaryCacheCodec
+ *
+ * @author sundae
+ * @date 2024/11/25
+ * @description 紧凑二进制格式的缓存序列化，支持 Shop、Voucher、Blog、UserDTO，其他类型仍然使用JSON。
+ * 相比JSON不需要保存字段名，也不需要先解析成 JSONObject 再转换一次，数据更小、解析更快、垃圾更少。
+ * <p>
+ * 格式：MAGIC(1) VERSION(1) FLAGS(1) [逻辑过期时间(8) 重建耗时(varint)] TYPE(1) 字段...
+ * 读取时第一个字节不是 MAGIC 的数据按JSON处理，因此之前写入的JSON缓存仍然可以读取
+ */
+@Slf4j
+public class BinaryCacheCodec implements CacheCodec {
+    /**
+     * 魔数。0xB1 不可能是UTF-8文本的第一个字节，用来和JSON数据区分
+     */
+    static final byte MAGIC = (byte) 0xB1;
+
+    /**
+     * 当前格式版本，字段有变化时递增，旧版本的数据仍按旧格式读取
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * 标记位：带逻辑过期时间
+     */
+    private static final int FLAG_EXPIRE = 1;
+
+    private final JsonCacheCodec json = new JsonCacheCodec();
+
+    private final Map<Class<?>, Schema<?>> schemasByType = new HashMap<>();
+    private final Map<Integer, Schema<?>> schemasByTag = new HashMap<>();
+
+    public BinaryCacheCodec() {
+        register(new ShopSchema());
+        register(new VoucherSchema());
+        register(new BlogSchema());
+        register(new UserDTOSchema());
+    }
+
+    private void register(Schema<?> schema) {
+        schemasByType.put(schema.type(), schema);
+        schemasByTag.put(schema.tag(), schema);
+    }
+
+    public static boolean isBinary(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Schema<?> schema = schemasByType.get(value.getClass());
+        if (schema == null) {
+            return json.encode(value);
+        }
+        BinaryWriter writer = new BinaryWriter(256);
+        writer.writeByte(MAGIC);
+        writer.writeByte(VERSION);
+        writer.writeByte(0);
+        writeBody(writer, schema, value);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        if (!isBinary(bytes)) {
+            return json.decode(bytes, type);
+        }
+        BinaryReader reader = new BinaryReader(bytes);
+        if (!readHeader(reader) || (reader.readByte() & FLAG_EXPIRE) != 0) {
+            return null;
+        }
+        return readBody(reader, type);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(RedisData redisData) {
+        Object data = redisData.getData();
+        Schema<?> schema = data == null ? null : schemasByType.get(data.getClass());
+        if (schema == null) {
+            return json.encodeWithExpire(redisData);
+        }
+        BinaryWriter writer = new BinaryWriter(256);
+        writer.writeByte(MAGIC);
+        writer.writeByte(VERSION);
+        writer.writeByte(FLAG_EXPIRE);
+        writer.writeFixedLong(redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        writer.writeLong(redisData.getDelta());
+        writeBody(writer, schema, data);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type) {
+        if (!isBinary(bytes)) {
+            return json.decodeWithExpire(bytes, type);
+        }
+        BinaryReader reader = new BinaryReader(bytes);
+        if (!readHeader(reader) || (reader.readByte() & FLAG_EXPIRE) == 0) {
+            return null;
+        }
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(reader.readFixedLong()), ZoneId.systemDefault()));
+        redisData.setDelta(reader.readLong());
+        R r = readBody(reader, type);
+        if (r == null) {
+            return null;
+        }
+        redisData.setData(r);
+        return redisData;
+    }
+
+    private boolean readHeader(BinaryReader reader) {
+        reader.readByte();
+        int version = reader.readByte();
+        if (version > VERSION) {
+            // 新版本写入的数据（滚动发布期间），当作未命中
+            log.warn("无法识别的缓存格式版本：{}", version);
+            return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void writeBody(BinaryWriter writer, Schema<T> schema, Object value) {
+        writer.writeByte(schema.tag());
+        schema.write((T) value, writer);
+    }
+
+    private <R> R readBody(BinaryReader reader, Class<R> type) {
+        Schema<?> schema = schemasByTag.get(reader.readByte());
+        if (schema == null || schema.type() != type) {
+            return null;
+        }
+        return type.cast(schema.read(reader));
+    }
+
+    /**
+     * 每种实体类的字段读写顺序。新增字段只能追加在最后，并且要递增 VERSION
+     */
+    private interface Schema<T> {
+        Class<T> type();
+
+        int tag();
+
+        void write(T value, BinaryWriter writer);
+
+        T read(BinaryReader reader);
+    }
+
+    private static class ShopSchema implements Schema<Shop> {
+        @Override
+        public Class<Shop> type() {
+            return Shop.class;
+        }
+
+        @Override
+        public int tag() {
+            return 1;
+        }
+
+        @Override
+        public void write(Shop shop, BinaryWriter writer) {
+            writer.writeLong(shop.getId());
+            writer.writeString(shop.getName());
+            writer.writeLong(shop.getTypeId());
+            writer.writeString(shop.getImages());
+            writer.writeString(shop.getArea());
+            writer.writeString(shop.getAddress());
+            writer.writeDouble(shop.getX());
+            writer.writeDouble(shop.getY());
+            writer.writeLong(shop.getAvgPrice());
+            writer.writeInt(shop.getSold());
+            writer.writeInt(shop.getComments());
+            writer.writeInt(shop.getScore());
+            writer.writeString(shop.getOpenHours());
+            writer.writeDateTime(shop.getCreateTime());
+            writer.writeDateTime(shop.getUpdateTime());
+            writer.writeDouble(shop.getDistance());
+        }
+
+        @Override
+        public Shop read(BinaryReader reader) {
+            Shop shop = new Shop();
+            shop.setId(reader.readLong());
+            shop.setName(reader.readString());
+            shop.setTypeId(reader.readLong());
+            shop.setImages(reader.readString());
+            shop.setArea(reader.readString());
+            shop.setAddress(reader.readString());
+            shop.setX(reader.readDouble());
+            shop.setY(reader.readDouble());
+            shop.setAvgPrice(reader.readLong());
+            shop.setSold(reader.readInt());
+            shop.setComments(reader.readInt());
+            shop.setScore(reader.readInt());
+            shop.setOpenHours(reader.readString());
+            shop.setCreateTime(reader.readDateTime());
+            shop.setUpdateTime(reader.readDateTime());
+            shop.setDistance(reader.readDouble());
+            return shop;
+        }
+    }
+
+    private static class VoucherSchema implements Schema<Voucher> {
+        @Override
+        public Class<Voucher> type() {
+            return Voucher.class;
+        }
+
+        @Override
+        public int tag() {
+            return 2;
+        }
+
+        @Override
+        public void write(Voucher voucher, BinaryWriter writer) {
+            writer.writeLong(voucher.getId());
+            writer.writeLong(voucher.getShopId());
+            writer.writeString(voucher.getTitle());
+            writer.writeString(voucher.getSubTitle());
+            writer.writeString(voucher.getRules());
+            writer.writeLong(voucher.getPayValue());
+            writer.writeLong(voucher.getActualValue());
+            writer.writeInt(voucher.getType());
+            writer.writeInt(voucher.getStatus());
+            writer.writeInt(voucher.getStock());
+            writer.writeDateTime(voucher.getBeginTime());
+            writer.writeDateTime(voucher.getEndTime());
+            writer.writeDateTime(voucher.getCreateTime());
+            writer.writeDateTime(voucher.getUpdateTime());
+        }
+
+        @Override
+        public Voucher read(BinaryReader reader) {
+            Voucher voucher = new Voucher();
+            voucher.setId(reader.readLong());
+            voucher.setShopId(reader.readLong());
+            voucher.setTitle(reader.readString());
+            voucher.setSubTitle(reader.readString());
+            voucher.setRules(reader.readString());
+            voucher.setPayValue(reader.readLong());
+            voucher.setActualValue(reader.readLong());
+            voucher.setType(reader.readInt());
+            voucher.setStatus(reader.readInt());
+            voucher.setStock(reader.readInt());
+            voucher.setBeginTime(reader.readDateTime());
+            voucher.setEndTime(reader.readDateTime());
+            voucher.setCreateTime(reader.readDateTime());
+            voucher.setUpdateTime(reader.readDateTime());
+            return voucher;
+        }
+    }
+
+    private static class BlogSchema implements Schema<Blog> {
+        @Override
+        public Class<Blog> type() {
+            return Blog.class;
+        }
+
+        @Override
+        public int tag() {
+            return 3;
+        }
+
+        @Override
+        public void write(Blog blog, BinaryWriter writer) {
+            writer.writeLong(blog.getId());
+            writer.writeLong(blog.getShopId());
+            writer.writeLong(blog.getUserId());
+            writer.writeString(blog.getIcon());
+            writer.writeString(blog.getName());
+            writer.writeBoolean(blog.getIsLike());
+            writer.writeString(blog.getTitle());
+            writer.writeString(blog.getImages());
+            writer.writeString(blog.getContent());
+            writer.writeInt(blog.getLiked());
+            writer.writeInt(blog.getComments());
+            writer.writeDateTime(blog.getCreateTime());
+            writer.writeDateTime(blog.getUpdateTime());
+        }
+
+        @Override
+        public Blog read(BinaryReader reader) {
+            Blog blog = new Blog();
+            blog.setId(reader.readLong());
+            blog.setShopId(reader.readLong());
+            blog.setUserId(reader.readLong());
+            blog.setIcon(reader.readString());
+            blog.setName(reader.readString());
+            blog.setIsLike(reader.readBoolean());
+            blog.setTitle(reader.readString());
+            blog.setImages(reader.readString());
+            blog.setContent(reader.readString());
+            blog.setLiked(reader.readInt());
+            blog.setComments(reader.readInt());
+            blog.setCreateTime(reader.readDateTime());
+            blog.setUpdateTime(reader.readDateTime());
+            return blog;
+        }
+    }
+
+    private static class UserDTOSchema implements Schema<UserDTO> {
+        @Override
+        public Class<UserDTO> type() {
+            return UserDTO.class;
+        }
+
+        @Override
+        public int tag() {
+            return 4;
+        }
+
+        @Override
+        public void write(UserDTO user, BinaryWriter writer) {
+            writer.writeLong(user.getId());
+            writer.writeString(user.getNickName());
+            writer.writeString(user.getIcon());
+        }
+
+        @Override
+        public UserDTO read(BinaryReader reader) {
+            UserDTO user = new UserDTO();
+            user.setId(reader.readLong());
+            user.setNickName(reader.readString());
+            user.setIcon(reader.readString());
+            return user;
+        }
+    }
+}
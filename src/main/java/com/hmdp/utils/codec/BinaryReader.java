@@ -0,0 +1,93 @@
+package com.hmdp.utils.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * BinaryReader
+ *
+ * @author sundae
+ * @date 2024/11/25
+ * @description 紧凑二进制格式的读取工具，与 {@link BinaryWriter} 对应
+ */
+public class BinaryReader {
+    private final byte[] buf;
+    private int pos;
+
+    public BinaryReader(byte[] buf) {
+        this.buf = buf;
+    }
+
+    public int readByte() {
+        return buf[pos++] & 0xFF;
+    }
+
+    public long readFixedLong() {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (buf[pos++] & 0xFF);
+        }
+        return v;
+    }
+
+    public long readVarLong() {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buf[pos++];
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+            shift += 7;
+        }
+    }
+
+    public Long readLong() {
+        long v = readVarLong();
+        return v == 0 ? null : unzigzag(v - 1);
+    }
+
+    public Integer readInt() {
+        long v = readVarLong();
+        return v == 0 ? null : (int) unzigzag(v - 1);
+    }
+
+    public Double readDouble() {
+        if (readByte() == 0) {
+            return null;
+        }
+        return Double.longBitsToDouble(readFixedLong());
+    }
+
+    public Boolean readBoolean() {
+        int b = readByte();
+        return b == 0 ? null : b == 2;
+    }
+
+    public String readString() {
+        long v = readVarLong();
+        if (v == 0) {
+            return null;
+        }
+        int length = (int) (v - 1);
+        String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return s;
+    }
+
+    public LocalDateTime readDateTime() {
+        long v = readVarLong();
+        if (v == 0) {
+            return null;
+        }
+        long seconds = unzigzag(v - 1);
+        int nanos = (int) readVarLong();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,111 @@
+package com.hmdp.utils.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * BinaryWriter
+ *
+ * @author sundae
+ * @date 2024/11/25
+ * @description 紧凑二进制格式的写入工具。整数使用 zigzag + varint 编码，
+ * 所有可为空的字段都用“值+1”或者标记字节表示，0 代表 null
+ */
+public class BinaryWriter {
+    private byte[] buf;
+    private int pos;
+
+    public BinaryWriter(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    public void writeByte(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+    }
+
+    public void writeFixedLong(long v) {
+        ensure(8);
+        for (int i = 56; i >= 0; i -= 8) {
+            buf[pos++] = (byte) (v >>> i);
+        }
+    }
+
+    /**
+     * 无符号 varint
+     */
+    public void writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+    }
+
+    public void writeLong(Long v) {
+        if (v == null) {
+            writeByte(0);
+            return;
+        }
+        // zigzag 之后加1，把0留给null（Long.MIN_VALUE 会溢出成0，业务数据中不会出现这个值）
+        writeVarLong(zigzag(v) + 1);
+    }
+
+    public void writeInt(Integer v) {
+        writeLong(v == null ? null : v.longValue());
+    }
+
+    public void writeDouble(Double v) {
+        if (v == null) {
+            writeByte(0);
+            return;
+        }
+        writeByte(1);
+        writeFixedLong(Double.doubleToRawLongBits(v));
+    }
+
+    public void writeBoolean(Boolean v) {
+        writeByte(v == null ? 0 : (v ? 2 : 1));
+    }
+
+    public void writeString(String v) {
+        if (v == null) {
+            writeByte(0);
+            return;
+        }
+        byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length + 1L);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /**
+     * 时间按 UTC 换算成秒和纳秒保存，读取时按同样的方式还原，不受时区影响
+     */
+    public void writeDateTime(LocalDateTime v) {
+        if (v == null) {
+            writeByte(0);
+            return;
+        }
+        writeVarLong(zigzag(v.toEpochSecond(ZoneOffset.UTC)) + 1);
+        writeVarLong(v.getNano());
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+    }
+}
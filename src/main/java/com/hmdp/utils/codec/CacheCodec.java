@@ -0,0 +1,47 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.entity.RedisData;
+
+/**
+ * CacheCodec
+ *
+ * @author sundae
+ * @date 2024/11/25
+ * @description 缓存序列化接口，CacheClient 通过它把对象写入Redis、从Redis读出
+ */
+public interface CacheCodec {
+
+    /**
+     * 序列化普通缓存值
+     *
+     * @param value 值（不能为null）
+     * @return 字节数组
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 反序列化普通缓存值
+     *
+     * @param bytes 字节数组（不为空）
+     * @param type  实体类类型
+     * @return 实体类；数据格式无法识别或者类型不匹配时返回null，调用方应当作未命中处理
+     */
+    <R> R decode(byte[] bytes, Class<R> type);
+
+    /**
+     * 序列化带逻辑过期时间的缓存值
+     *
+     * @param redisData 逻辑过期数据
+     * @return 字节数组
+     */
+    byte[] encodeWithExpire(RedisData redisData);
+
+    /**
+     * 反序列化带逻辑过期时间的缓存值
+     *
+     * @param bytes 字节数组（不为空）
+     * @param type  实体类类型
+     * @return data 已经是 type 类型的 {@link RedisData}；无法识别时返回null
+     */
+    <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type);
+}
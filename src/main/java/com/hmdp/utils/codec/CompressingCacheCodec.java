@@ -0,0 +1,193 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.entity.RedisData;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * CompressingCacheCodec
+ *
+ * @author sundae
+ * @date 2024/11/26
+ * @description 在其他序列化方式外面包一层压缩：序列化后超过阈值的数据用 Deflate（最快档位）压缩，
+ * 压缩后的数据以标记字节开头，读取时根据标记字节判断是否需要解压，因此压缩和不压缩的数据可以共存。
+ * <p>
+ * 格式：MARKER(1) 原始长度(varint) 压缩数据
+ */
+@Slf4j
+public class CompressingCacheCodec implements CacheCodec {
+    /**
+     * 压缩标记。0xC1 在UTF-8中永远不会出现，也不同于二进制格式的魔数
+     */
+    private static final byte MARKER = (byte) 0xC1;
+
+    /**
+     * 解压后的最大长度。原始长度来自Redis中的数据，超过这个长度（或者超过 Deflate 能达到的最大压缩比）说明数据已经损坏
+     */
+    private static final int MAX_ORIGINAL_LENGTH = 64 * 1024 * 1024;
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    /**
+     * Deflater/Inflater 内部持有本地内存，创建成本高，每个线程复用一个
+     */
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private final CacheCodec delegate;
+
+    /**
+     * 超过这个字节数才压缩，小于等于0表示不压缩（仍然可以读取压缩过的数据）
+     */
+    private final int threshold;
+
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder bytesBefore = new LongAdder();
+    private final LongAdder bytesAfter = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder decompressed = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+
+    public CompressingCacheCodec(CacheCodec delegate, int threshold) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return compress(delegate.encode(value));
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        byte[] raw = decompress(bytes);
+        return raw == null ? null : delegate.decode(raw, type);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(RedisData redisData) {
+        return compress(delegate.encodeWithExpire(redisData));
+    }
+
+    @Override
+    public <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type) {
+        byte[] raw = decompress(bytes);
+        return raw == null ? null : delegate.decodeWithExpire(raw, type);
+    }
+
+    private byte[] compress(byte[] bytes) {
+        if (threshold <= 0 || bytes.length <= threshold) {
+            return bytes;
+        }
+        long begin = System.nanoTime();
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        BinaryWriter writer = new BinaryWriter(bytes.length);
+        writer.writeByte(MARKER);
+        writer.writeVarLong(bytes.length);
+        byte[] out = writer.toByteArray();
+        int headerLength = out.length;
+        // 压缩后不比原数据小就没有意义了，缓冲区只留到原数据的大小
+        out = Arrays.copyOf(out, bytes.length);
+        int length = headerLength;
+        while (!deflater.finished() && length < out.length) {
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        encodeNanos.add(System.nanoTime() - begin);
+        if (!deflater.finished()) {
+            skipped.increment();
+            return bytes;
+        }
+        compressed.increment();
+        bytesBefore.add(bytes.length);
+        bytesAfter.add(length);
+        return Arrays.copyOf(out, length);
+    }
+
+    /**
+     * 解压，数据被截断或者损坏时返回null（当作未命中）
+     */
+    private byte[] decompress(byte[] bytes) {
+        if (bytes.length == 0 || bytes[0] != MARKER) {
+            return bytes;
+        }
+        long begin = System.nanoTime();
+        try {
+            BinaryReader reader = new BinaryReader(bytes);
+            reader.readByte();
+            long declaredLength = reader.readVarLong();
+            int offset = varLongSize(declaredLength) + 1;
+            if (declaredLength < 0 || declaredLength > MAX_ORIGINAL_LENGTH
+                    || declaredLength > (long) (bytes.length - offset) * MAX_DEFLATE_RATIO) {
+                log.warn("缓存数据已损坏，原始长度无效：{}", declaredLength);
+                return null;
+            }
+            int originalLength = (int) declaredLength;
+            Inflater inflater = INFLATER.get();
+            inflater.reset();
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            byte[] out = new byte[originalLength];
+            int length = 0;
+            while (length < originalLength && !inflater.finished()) {
+                int n = inflater.inflate(out, length, originalLength - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != originalLength) {
+                log.warn("缓存数据解压失败，长度不一致：{} != {}", length, originalLength);
+                return null;
+            }
+            return out;
+        } catch (DataFormatException | RuntimeException e) {
+            // 数据被截断时读取长度会越界
+            log.warn("缓存数据解压失败", e);
+            return null;
+        } finally {
+            decompressed.increment();
+            decodeNanos.add(System.nanoTime() - begin);
+        }
+    }
+
+    private static int varLongSize(long v) {
+        int size = 1;
+        while ((v & ~0x7FL) != 0) {
+            v >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long before = bytesBefore.sum();
+        long after = bytesAfter.sum();
+        long compressedCount = compressed.sum();
+        // 压缩后不够小而放弃的数据也花了压缩的时间
+        long attempts = compressedCount + skipped.sum();
+        long decompressedCount = decompressed.sum();
+        stats.put("threshold", threshold);
+        stats.put("compressed", compressedCount);
+        stats.put("skipped", skipped.sum());
+        stats.put("bytesBefore", before);
+        stats.put("bytesAfter", after);
+        stats.put("ratio", before == 0 ? 1.0 : (double) after / before);
+        stats.put("avgEncodeMicros", attempts == 0 ? 0 : encodeNanos.sum() / attempts / 1000);
+        stats.put("decompressed", decompressedCount);
+        stats.put("avgDecodeMicros", decompressedCount == 0 ? 0 : decodeNanos.sum() / decompressedCount / 1000);
+        return stats;
+    }
+}
@@ -0,0 +1,48 @@
+package com.hmdp.utils.codec;
+
+import cn.hutool.json.JSON;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.entity.RedisData;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JsonCacheCodec
+ *
+ * @author sundae
+ * @date 2024/11/25
+ * @description JSON格式的缓存序列化，与之前直接用 JSONUtil 写入的数据完全兼容
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        if (BinaryCacheCodec.isBinary(bytes)) {
+            // 二进制格式的数据（例如回滚了序列化配置），当作未命中重新加载
+            return null;
+        }
+        // 按 Type 解析，数组类型（@Cached 缓存的集合）也能正确反序列化
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), (Type) type, false);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(RedisData redisData) {
+        return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type) {
+        if (BinaryCacheCodec.isBinary(bytes)) {
+            return null;
+        }
+        RedisData redisData = JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), RedisData.class);
+        redisData.setData(((JSON) redisData.getData()).toBean((Type) type));
+        return redisData;
+    }
+}
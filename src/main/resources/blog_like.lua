@@ -0,0 +1,13 @@
+-- 点赞 / 取消点赞（已经点赞过时取消），同时记录点赞数的变化，由后台定时写回数据库
+-- KEYS[1] 博客的点赞用户（zset：成员为用户id，分数为点赞时间）
+-- KEYS[2] 点赞数的变化（hash：博客id -> 变化量）
+-- ARGV[1] 用户id  ARGV[2] 当前时间（毫秒）  ARGV[3] 博客id
+-- 返回 1 点赞，0 取消点赞
+if (redis.call('zscore', KEYS[1], ARGV[1])) then
+    redis.call('zrem', KEYS[1], ARGV[1])
+    redis.call('hincrby', KEYS[2], ARGV[3], -1)
+    return 0
+end
+redis.call('zadd', KEYS[1], ARGV[2], ARGV[1])
+redis.call('hincrby', KEYS[2], ARGV[3], 1)
+return 1
@@ -0,0 +1,6 @@
+-- 取出并清空点赞数的变化，多个节点同时写回时每个变化只会被取出一次
+-- KEYS[1] 点赞数的变化（hash：博客id -> 变化量）
+-- 返回 博客id, 变化量, 博客id, 变化量 ...
+local deltas = redis.call('hgetall', KEYS[1])
+redis.call('del', KEYS[1])
+return deltas
@@ -3,17 +3,39 @@
 local voucherId = ARGV[1]
 -- 1.2 用户id
 local userId = ARGV[2]
+-- 1.3 订单id
+local orderId = ARGV[3]
+-- 1.4 订单队列分区
+local partition = ARGV[4]
+-- 1.5 当前时间（毫秒时间戳）
+local now = tonumber(ARGV[5])
+-- 1.6 排队凭证（异步下单时才有）和凭证的存活时间（毫秒）
+local ticket = ARGV[6]
+local ticketTtl = ARGV[7]
 
 -- 2. 数据key
 -- 2.1 秒杀券库存key 用..来拼接字符串
 local stockKey = 'seckill:stock:' .. voucherId
--- 2.2 秒杀券订单key
-local orderKey = 'seckill:order:' .. userId
+-- 2.2 秒杀券订单key（购买过这个券的用户集合）
+local orderKey = 'seckill:order:' .. voucherId
+-- 2.3 订单消息队列key（按优惠券分区）
+local streamKey = 'stream.orders:' .. partition
+-- 2.4 秒杀时间key（hash：begin 开始时间，end 结束时间）
+local timeKey = 'seckill:time:' .. voucherId
 
 -- 3. 脚本业务
--- FIXME 缺少判断是否过期的逻辑
+-- 3.0 判断是否在秒杀时间内，在任何写操作之前 HMGET timeKey begin end
+local window = redis.call('hmget', timeKey, 'begin', 'end')
+if (window[1] and now < tonumber(window[1])) then
+    -- 尚未开始，返回3
+    return 3
+end
+if (window[2] and now > tonumber(window[2])) then
+    -- 已经结束，返回4
+    return 4
+end
 -- 3.1 判断库存是否充足 GET stockKey
-if (tonumber(redis.call('get', stockKey)) <= 0) then
+if ((tonumber(redis.call('get', stockKey)) or 0) <= 0) then
     -- 库存不足，返回1
     return 1
 end
@@ -26,4 +48,14 @@ end
 redis.call('incrby', stockKey, -1)
 -- 3.4 下单（保存用户） sadd orderKey userId
 redis.call('sadd', orderKey, userId)
-return 0
\ No newline at end of file
+-- 3.5 发送订单消息到队列中 XADD stream.orders:0 * k1 v1 k2 v2 ...
+if (ticket) then
+    -- 异步下单：记录排队状态，订单写入数据库后由消费者更新为成功或失败
+    local ticketKey = 'seckill:ticket:' .. ticket
+    redis.call('hset', ticketKey, 'status', 'queued', 'userId', userId, 'orderId', orderId)
+    redis.call('pexpire', ticketKey, ticketTtl)
+    redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId, 'ticket', ticket)
+else
+    redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+end
+return 0
@@ -0,0 +1,33 @@
+-- 库存分片模式下的秒杀：判断秒杀时间、一人一单，扣减分片库存并记录用户
+-- 一个分片的所有key都带有相同的 hash tag {优惠券id:分片号}，在集群中位于同一个槽
+-- KEYS[1] 分片库存 seckill:stock:{优惠券id:分片号}
+-- KEYS[2] 分片的购买用户集合 seckill:order:{优惠券id:分片号}（用户按id哈希固定在一个分片，一人一单只需要判断这个分片）
+-- KEYS[3] 分片的秒杀时间 seckill:time:{优惠券id:分片号}（hash：begin 开始时间，end 结束时间）
+-- ARGV[1] 用户id  ARGV[2] 当前时间（毫秒时间戳）
+-- ARGV[3] 1 扣减这个分片的库存；0 库存已经从其他分片扣减，只记录用户
+-- 返回 0 成功，1 这个分片的库存不足，2 重复下单，3 尚未开始，4 已经结束
+local userId = ARGV[1]
+local now = tonumber(ARGV[2])
+
+-- 1. 判断是否在秒杀时间内
+local window = redis.call('hmget', KEYS[3], 'begin', 'end')
+if (window[1] and now < tonumber(window[1])) then
+    return 3
+end
+if (window[2] and now > tonumber(window[2])) then
+    return 4
+end
+-- 2. 判断用户是否下单
+if (redis.call('sismember', KEYS[2], userId) == 1) then
+    return 2
+end
+-- 3. 判断库存是否充足并扣减
+if (ARGV[3] == '1') then
+    if ((tonumber(redis.call('get', KEYS[1])) or 0) <= 0) then
+        return 1
+    end
+    redis.call('incrby', KEYS[1], -1)
+end
+-- 4. 下单（保存用户）
+redis.call('sadd', KEYS[2], userId)
+return 0
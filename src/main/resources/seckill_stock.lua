@@ -0,0 +1,8 @@
+-- 扣减一个库存分片（用户所在分片的库存不足时，从其他分片扣减）
+-- KEYS[1] 库存分片key
+-- 返回 0 扣减成功，1 这个分片的库存不足
+if (tonumber(redis.call('get', KEYS[1]) or '0') <= 0) then
+    return 1
+end
+redis.call('incrby', KEYS[1], -1)
+return 0
@@ -0,0 +1,20 @@
+-- 滑动窗口限流，每个key一个窗口（zset：成员为请求，分数为请求时间），所有窗口都有余量时才放行并同时计数
+-- KEYS[i] 第i个窗口的key
+-- ARGV[1] 当前时间（毫秒）  ARGV[2] 本次请求的唯一标识
+-- ARGV[2i+1] 第i个窗口的长度（毫秒）  ARGV[2i+2] 第i个窗口内允许的请求数
+-- 返回 {0, 0} 放行；{i, 毫秒数} 第i个窗口的请求数已满，过这么久之后才会有余量
+local now = tonumber(ARGV[1])
+for i = 1, #KEYS do
+    local window = tonumber(ARGV[2 * i + 1])
+    redis.call('zremrangebyscore', KEYS[i], 0, now - window)
+    if (redis.call('zcard', KEYS[i]) >= tonumber(ARGV[2 * i + 2])) then
+        -- 最早的一个请求移出窗口之后才有余量
+        local oldest = redis.call('zrange', KEYS[i], 0, 0, 'withscores')
+        return {i, tonumber(oldest[2]) + window - now}
+    end
+end
+for i = 1, #KEYS do
+    redis.call('zadd', KEYS[i], now, ARGV[2])
+    redis.call('pexpire', KEYS[i], ARGV[2 * i + 1])
+end
+return {0, 0}
@@ -0,0 +1,5 @@
+-- 创建消费者组，队列不存在时一起创建（MKSTREAM）
+-- KEYS[1] 队列key，ARGV[1] 消费者组名称
+-- 消费者组已经存在时 XGROUP CREATE 会返回 BUSYGROUP 错误，用 pcall 忽略
+redis.pcall('xgroup', 'create', KEYS[1], ARGV[1], '0', 'MKSTREAM')
+return 1
@@ -0,0 +1,13 @@
+-- 续期或者释放 worker id 租约，只有租约还属于自己时才执行
+-- KEYS[1] 租约key
+-- ARGV[1] 节点标识  ARGV[2] 续期时间（毫秒），0 表示释放
+-- 返回 1 成功，0 租约已经不属于自己
+if (redis.call('get', KEYS[1]) ~= ARGV[1]) then
+    return 0
+end
+if (tonumber(ARGV[2]) > 0) then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+else
+    redis.call('del', KEYS[1])
+end
+return 1
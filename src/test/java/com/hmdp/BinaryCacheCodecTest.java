@@ -0,0 +1,119 @@
+package com.hmdp;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.RedisData;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import com.hmdp.utils.codec.BinaryCacheCodec;
+import com.hmdp.utils.codec.CompressingCacheCodec;
+import com.hmdp.utils.codec.JsonCacheCodec;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryCacheCodecTest {
+    private final BinaryCacheCodec binary = new BinaryCacheCodec();
+    private final JsonCacheCodec json = new JsonCacheCodec();
+
+    private Shop shop() {
+        Shop shop = new Shop();
+        shop.setId(1L);
+        shop.setName("103茶餐厅");
+        shop.setTypeId(1L);
+        shop.setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg");
+        shop.setArea("大关");
+        shop.setAddress("金华路锦昌文华苑29号");
+        shop.setX(120.149192);
+        shop.setY(30.316078);
+        shop.setAvgPrice(80L);
+        shop.setSold(4215);
+        shop.setComments(3035);
+        shop.setScore(37);
+        shop.setOpenHours("10:00-22:00");
+        shop.setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39));
+        shop.setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19, 123000000));
+        return shop;
+    }
+
+    @Test
+    void testRoundTrip() {
+        Shop shop = shop();
+        byte[] bytes = binary.encode(shop);
+        assertEquals(shop, binary.decode(bytes, Shop.class));
+        // 不写字段名，至少比JSON小20%
+        int jsonLength = json.encode(shop).length;
+        assertTrue(bytes.length <= jsonLength * 0.8, "binary = " + bytes.length + ", json = " + jsonLength);
+    }
+
+    @Test
+    void testRoundTripWithExpire() {
+        RedisData redisData = new RedisData();
+        redisData.setData(shop());
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30).withNano(0));
+        redisData.setDelta(15L);
+        RedisData decoded = binary.decodeWithExpire(binary.encodeWithExpire(redisData), Shop.class);
+        assertEquals(redisData, decoded);
+    }
+
+    @Test
+    void testReadLegacyJson() {
+        Shop shop = shop();
+        byte[] legacy = JSONUtil.toJsonStr(shop).getBytes(StandardCharsets.UTF_8);
+        assertEquals(shop, binary.decode(legacy, Shop.class));
+        // 类型不匹配时当作未命中
+        assertNull(binary.decode(binary.encode(shop), Voucher.class));
+    }
+
+    @Test
+    void testArrayRoundTrip() {
+        // @Cached 把集合返回值按数组缓存，二进制格式不支持时回退到JSON
+        Shop[] shops = {shop(), shop()};
+        assertTrue(Arrays.equals(shops, binary.decode(binary.encode(shops), Shop[].class)));
+        RedisData redisData = new RedisData();
+        redisData.setData(shops);
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30).withNano(0));
+        RedisData decoded = binary.decodeWithExpire(binary.encodeWithExpire(redisData), Shop[].class);
+        assertTrue(Arrays.equals(shops, (Shop[]) decoded.getData()));
+    }
+
+    @Test
+    void testCompression() {
+        Blog blog = new Blog();
+        blog.setId(1L);
+        blog.setShopId(1L);
+        blog.setUserId(1L);
+        blog.setTitle("无尽浪漫的夜晚丨在万花丛中摇晃着红酒杯");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            content.append("生活就是一半烟火·一半诗意<br/>手执烟火谋生活·心怀诗意以谋爱·<br/>");
+        }
+        blog.setContent(content.toString());
+        blog.setImages("/imgs/blogs/7/14/4771fefb-1a87-4252-816c-9f7ec41ffa4a.jpg,/imgs/blogs/4/10/2f07e3c9-ddce-482d-9ea7-c21450f8d7cd.jpg");
+
+        CompressingCacheCodec compressing = new CompressingCacheCodec(binary, 1024);
+        byte[] bytes = compressing.encode(blog);
+        assertEquals(blog, compressing.decode(bytes, Blog.class));
+        assertTrue(bytes.length < binary.encode(blog).length);
+        // 重复的正文压缩后不到原来的20%，统计信息与实际大小一致
+        Map<String, Object> stats = compressing.stats();
+        assertEquals(1L, stats.get("compressed"));
+        assertEquals((long) bytes.length, stats.get("bytesAfter"));
+        assertTrue((double) stats.get("ratio") < 0.2, "ratio = " + stats.get("ratio"));
+        // 小对象不压缩，关闭压缩后仍然能读取压缩过的数据
+        assertEquals(shop(), compressing.decode(compressing.encode(shop()), Shop.class));
+        assertEquals(blog, new CompressingCacheCodec(binary, 0).decode(bytes, Blog.class));
+        // 被截断或者原始长度被篡改的数据当作未命中
+        assertNull(compressing.decode(Arrays.copyOf(bytes, bytes.length / 2), Blog.class));
+        assertNull(compressing.decodeWithExpire(Arrays.copyOf(bytes, 2), Blog.class));
+        byte[] oversized = {bytes[0], (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 0x01};
+        assertNull(compressing.decode(oversized, Blog.class));
+    }
+}
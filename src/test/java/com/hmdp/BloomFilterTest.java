@@ -0,0 +1,40 @@
+package com.hmdp;
+
+import com.hmdp.utils.BloomFilter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void testNoFalseNegativeAndFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(100000, 0.01, Long.MAX_VALUE);
+        for (long id = 1; id <= 100000; id++) {
+            filter.put(id);
+        }
+        for (long id = 1; id <= 100000; id++) {
+            assertTrue(filter.mightContain(id));
+        }
+        int falsePositives = 0;
+        for (long id = 100001; id <= 200000; id++) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        // 实际误判率不超过目标误判率（1%）和按实际参数估算的误判率的1.5倍
+        double rate = falsePositives / 100000.0;
+        assertTrue(rate <= 0.01 * 1.5, "误判率：" + rate);
+        assertTrue(rate <= filter.expectedFalsePositiveRate(100000) * 1.5, "误判率：" + rate);
+        // 不限制内存时按公式计算：m = -n * ln(p) / (ln2)^2 位，约 117KB
+        long expectedBytes = (long) Math.ceil(-100000 * Math.log(0.01) / (Math.log(2) * Math.log(2)) / 8);
+        assertTrue(filter.memoryBytes() >= expectedBytes && filter.memoryBytes() <= expectedBytes * 1.1,
+                "内存：" + filter.memoryBytes());
+    }
+
+    @Test
+    void testMaxMemory() {
+        BloomFilter filter = new BloomFilter(1000000, 0.001, 8 * 1024 * 8);
+        assertTrue(filter.memoryBytes() <= 8 * 1024);
+    }
+}
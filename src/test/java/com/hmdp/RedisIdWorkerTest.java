@@ -4,7 +4,11 @@ import com.hmdp.utils.RedisIdWorker;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 import javax.annotation.Resource;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -19,9 +23,11 @@ public class RedisIdWorkerTest {
     @Test
     public void testIdWorker() throws InterruptedException {
         CountDownLatch latch = new CountDownLatch(300);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
         Runnable task = () -> {
             for (int i = 0; i < 100; i++) {
                 long id = redisIdWorker.nextId("order");
+                ids.add(id);
                 System.out.println("id = " + id);
             }
             latch.countDown();
@@ -33,5 +39,7 @@ public class RedisIdWorkerTest {
         latch.await();
         long end = System.currentTimeMillis();
         System.out.println("time = " + (end - begin));
+        // 号段模式下也不能有重复的ID
+        assertEquals(30000, ids.size());
     }
 }
\ No newline at end of file
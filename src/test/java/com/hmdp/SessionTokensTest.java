@@ -0,0 +1,95 @@
+package com.hmdp;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.SessionTokens;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionTokensTest {
+    private static final String SECRET_1 = "0123456789abcdef0123456789abcdef-1";
+    private static final String SECRET_2 = "0123456789abcdef0123456789abcdef-2";
+
+    private static UserDTO user() {
+        UserDTO user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("小鱼同学");
+        user.setIcon("/imgs/icons/user1.jpg");
+        return user;
+    }
+
+    @Test
+    void testIssueAndParse() {
+        SessionTokens tokens = new SessionTokens(keys("k1", SECRET_1), "k1", 60_000);
+        long before = System.currentTimeMillis();
+        SessionTokens.Claims claims = tokens.parse(tokens.issue(user()));
+        assertNotNull(claims);
+        assertEquals(user(), claims.getUser());
+        assertTrue(claims.getExpireAt() >= before + 60_000);
+        assertNotNull(claims.getSid());
+    }
+
+    @Test
+    void testReissueKeepsSessionId() {
+        SessionTokens tokens = new SessionTokens(keys("k1", SECRET_1), "k1", 60_000);
+        SessionTokens.Claims first = tokens.parse(tokens.issue(user()));
+        SessionTokens.Claims reissued = tokens.parse(tokens.issue(user(), first.getSid()));
+        assertEquals(first.getSid(), reissued.getSid());
+        assertNotEquals(first.getSid(), tokens.parse(tokens.issue(user())).getSid());
+    }
+
+    @Test
+    void testWeakKeysAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SessionTokens(keys("k1", ""), "k1", 60_000));
+        assertThrows(IllegalArgumentException.class, () -> new SessionTokens(keys("k1", "short-secret"), "k1", 60_000));
+        assertThrows(IllegalArgumentException.class,
+                () -> new SessionTokens(keys("k1", "hmdp-dev-session-key-change-me-0123456789"), "k1", 60_000));
+        assertThrows(IllegalArgumentException.class, () -> new SessionTokens(keys("k1", SECRET_1), "k2", 60_000));
+    }
+
+    @Test
+    void testTamperedTokenIsRejected() {
+        SessionTokens tokens = new SessionTokens(keys("k1", SECRET_1), "k1", 60_000);
+        String token = tokens.issue(user());
+        String[] parts = token.split("\\.");
+        UserDTO other = user();
+        other.setId(1L);
+        String forged = parts[0] + "." + new SessionTokens(keys("k1", SECRET_1), "k1", 60_000)
+                .issue(other).split("\\.")[1] + "." + parts[2];
+        assertNull(tokens.parse(forged));
+        assertNull(tokens.parse("k1.abc"));
+        assertNull(tokens.parse("not-a-token"));
+        // 其他密钥签发的令牌
+        assertNull(tokens.parse(new SessionTokens(keys("k1", SECRET_2), "k1", 60_000).issue(user())));
+    }
+
+    @Test
+    void testKeyRotation() {
+        SessionTokens old = new SessionTokens(keys("k1", SECRET_1), "k1", 60_000);
+        String oldToken = old.issue(user());
+
+        Map<String, String> rotated = keys("k1", SECRET_1);
+        rotated.put("k2", SECRET_2);
+        SessionTokens tokens = new SessionTokens(rotated, "k2", 60_000);
+        String newToken = tokens.issue(user());
+        assertTrue(newToken.startsWith("k2."));
+        assertNotNull(tokens.parse(oldToken));
+        assertNotNull(tokens.parse(newToken));
+        // 删除旧密钥后旧令牌失效
+        assertNull(new SessionTokens(keys("k2", SECRET_2), "k2", 60_000).parse(oldToken));
+    }
+
+    private static Map<String, String> keys(String id, String secret) {
+        Map<String, String> keys = new HashMap<>();
+        keys.put(id, secret);
+        return keys;
+    }
+}
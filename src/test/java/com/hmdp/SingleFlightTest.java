@@ -0,0 +1,48 @@
+package com.hmdp;
+
+import com.hmdp.utils.SingleFlight;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentLoadsAreCoalesced() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger dbCalls = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService es = Executors.newFixedThreadPool(50);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(es.submit(() -> {
+                start.await();
+                return singleFlight.execute("cache:shop:1", () -> {
+                    dbCalls.incrementAndGet();
+                    try {
+                        // 模拟查询数据库
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "shop-1";
+                });
+            }));
+        }
+        start.countDown();
+        for (Future<String> future : futures) {
+            assertEquals("shop-1", future.get());
+        }
+        es.shutdown();
+        assertEquals(1, dbCalls.get());
+        assertEquals(49L, singleFlight.stats().get("coalesced"));
+    }
+}
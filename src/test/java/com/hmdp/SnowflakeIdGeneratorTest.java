@@ -0,0 +1,74 @@
+package com.hmdp;
+
+import com.hmdp.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void testLayout() {
+        AtomicLong clock = new AtomicLong(100);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7, 100, 5, clock::get);
+        long first = generator.nextId();
+        long second = generator.nextId();
+        assertEquals(100, first >>> 32);
+        assertEquals(7, (first >>> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_WORKER_ID);
+        assertEquals(first + 1, second);
+        clock.set(101);
+        assertEquals(101, generator.nextId() >>> 32);
+    }
+
+    @Test
+    void testConcurrentIdsAreUnique() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 1, 5,
+                () -> System.currentTimeMillis() / 1000);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService es = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(es.submit(() -> {
+                long last = 0;
+                for (int j = 0; j < 100000; j++) {
+                    long id = generator.nextId();
+                    // 同一个线程拿到的ID递增
+                    assertTrue(id > last);
+                    last = id;
+                    ids.add(id);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        es.shutdown();
+        assertEquals(800000, ids.size());
+    }
+
+    @Test
+    void testClockRollback() {
+        AtomicLong clock = new AtomicLong(200);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 200, 5, clock::get);
+        long before = generator.nextId();
+        // 回拨3秒，继续使用上一次的时间戳
+        clock.set(197);
+        long after = generator.nextId();
+        assertEquals(200, after >>> 32);
+        assertTrue(after > before);
+        // 回拨超过5秒，拒绝生成
+        clock.set(190);
+        assertThrows(IllegalStateException.class, generator::nextId);
+    }
+}
@@ -0,0 +1,33 @@
+package com.hmdp;
+
+import com.hmdp.utils.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void testBurstThenRefill() throws InterruptedException {
+        // 容量3，每200ms生成1个令牌
+        TokenBucket bucket = new TokenBucket(3, 1, TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        Thread.sleep(250);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void testRefillMillis() {
+        TokenBucket bucket = new TokenBucket(10, 5, TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2000, bucket.refillMillis());
+    }
+}
@@ -0,0 +1,64 @@
+package com.hmdp;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.User;
+import com.hmdp.utils.UserDTOMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UserDTOMapperTest {
+
+    private static User user() {
+        User user = new User();
+        user.setId(1010L);
+        user.setPhone("13686869696");
+        user.setNickName("小鱼同学");
+        user.setIcon("/imgs/icons/user1.jpg");
+        return user;
+    }
+
+    private static Map<String, Object> reflectiveToHash(UserDTO userDTO) {
+        return BeanUtil.beanToMap(userDTO, new HashMap<>(),
+                CopyOptions.create().setIgnoreNullValue(true)
+                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
+    }
+
+    @Test
+    void testFromUserMatchesBeanUtil() {
+        UserDTO expected = BeanUtil.copyProperties(user(), UserDTO.class);
+        UserDTO userDTO = UserDTOMapper.fromUser(user());
+        assertEquals(expected.getId(), userDTO.getId());
+        assertEquals(expected.getNickName(), userDTO.getNickName());
+        assertEquals(expected.getIcon(), userDTO.getIcon());
+
+        // 空字段同样保持为空
+        User user = user();
+        user.setNickName(null);
+        user.setIcon(null);
+        expected = BeanUtil.copyProperties(user, UserDTO.class);
+        userDTO = UserDTOMapper.fromUser(user);
+        assertEquals(expected.getId(), userDTO.getId());
+        assertNull(userDTO.getNickName());
+        assertNull(userDTO.getIcon());
+    }
+
+    @Test
+    void testHashMatchesBeanUtil() {
+        UserDTO userDTO = UserDTOMapper.fromUser(user());
+        Map<String, Object> expectedHash = reflectiveToHash(userDTO);
+        assertEquals(expectedHash, new HashMap<>(UserDTOMapper.toHash(userDTO)));
+        assertEquals(BeanUtil.fillBeanWithMap(expectedHash, new UserDTO(), false), UserDTOMapper.fromHash(expectedHash));
+
+        // 空值不写入Hash
+        userDTO.setIcon(null);
+        expectedHash.remove("icon");
+        assertEquals(expectedHash, new HashMap<>(UserDTOMapper.toHash(userDTO)));
+    }
+}
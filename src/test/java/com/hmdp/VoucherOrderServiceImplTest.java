@@ -0,0 +1,53 @@
+package com.hmdp;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@Transactional
+class VoucherOrderServiceImplTest {
+    private static final long VOUCHER_ID = 990001L;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    private static VoucherOrder order(long id, long userId) {
+        return new VoucherOrder().setId(id).setVoucherId(VOUCHER_ID).setUserId(userId);
+    }
+
+    @Test
+    void testReplayCommittedBatch() {
+        seckillVoucherService.save(new SeckillVoucher().setVoucherId(VOUCHER_ID).setStock(10)
+                .setBeginTime(LocalDateTime.now()).setEndTime(LocalDateTime.now().plusDays(1)));
+        List<VoucherOrder> batch = Arrays.asList(order(99000101L, 1L), order(99000102L, 2L));
+        assertEquals(2, voucherOrderService.createVoucherOrders(batch).size());
+
+        // 提交之后、确认消息之前宕机，同一批消息被重新处理：订单算作成功，不重复扣减库存
+        List<VoucherOrder> replayed = voucherOrderService.createVoucherOrders(batch);
+        assertEquals(2, replayed.size());
+        assertTrue(voucherOrderService.createVoucherOrder(order(99000101L, 1L)));
+        assertEquals(8, seckillVoucherService.getById(VOUCHER_ID).getStock());
+        assertEquals(2, voucherOrderService.query().eq("voucher_id", VOUCHER_ID).count());
+
+        // 同一个用户的另一个订单仍然是重复下单
+        assertTrue(voucherOrderService.createVoucherOrders(Arrays.asList(order(99000103L, 1L))).isEmpty());
+        assertFalse(voucherOrderService.createVoucherOrder(order(99000103L, 1L)));
+    }
+}
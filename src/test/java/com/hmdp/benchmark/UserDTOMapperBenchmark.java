@@ -0,0 +1,62 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.User;
+import com.hmdp.utils.UserDTOMapper;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * UserDTOMapperBenchmark
+ *
+ * @author sundae
+ * @date 2024/12/08
+ * @description 登录（User -> UserDTO -> Hash）和校验登录状态（Hash -> UserDTO）的耗时和内存分配对比，
+ * {@link UserDTOMapper} 对比 BeanUtil。手动运行 main 方法，不属于单元测试（结果受机器和JIT影响）
+ */
+public class UserDTOMapperBenchmark {
+    private static final int ITERATIONS = 200_000;
+
+    public static void main(String[] args) {
+        User user = new User();
+        user.setId(1010L);
+        user.setPhone("13686869696");
+        user.setNickName("小鱼同学");
+        user.setIcon("/imgs/icons/user1.jpg");
+        Map<String, Object> hash = reflectiveToHash(BeanUtil.copyProperties(user, UserDTO.class));
+        measure("BeanUtil login", () -> reflectiveToHash(BeanUtil.copyProperties(user, UserDTO.class)));
+        measure("UserDTOMapper login", () -> UserDTOMapper.toHash(UserDTOMapper.fromUser(user)));
+        measure("BeanUtil refresh", () -> BeanUtil.fillBeanWithMap(hash, new UserDTO(), false));
+        measure("UserDTOMapper refresh", () -> UserDTOMapper.fromHash(hash));
+    }
+
+    private static Map<String, Object> reflectiveToHash(UserDTO userDTO) {
+        return BeanUtil.beanToMap(userDTO, new HashMap<>(),
+                CopyOptions.create().setIgnoreNullValue(true)
+                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
+    }
+
+    private static void measure(String name, Supplier<Object> task) {
+        // 预热
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.get();
+        }
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long begin = System.nanoTime();
+        Object last = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            last = task.get();
+        }
+        long nanos = System.nanoTime() - begin;
+        long bytes = threadMXBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+        System.out.printf("%-22s %8.1f ns/op %8d B/op (%s)%n", name, (double) nanos / ITERATIONS, bytes / ITERATIONS,
+                last == null ? "" : last.getClass().getSimpleName());
+    }
+}